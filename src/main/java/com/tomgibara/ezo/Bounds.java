@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+/**
+ * <p>
+ * An axis-aligned rectangle of pixels, used to report the extent of rendered
+ * ink. The left and top coordinates are inclusive while the right and bottom
+ * coordinates are exclusive, so that the width of the bounds is
+ * <code>right - left</code>. Bounds which contain no pixels are empty; all
+ * empty bounds are equal.
+ *
+ * <p>
+ * This class can be used by multiple threads without external synchronization.
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class Bounds {
+
+	// statics
+
+	private static final Bounds EMPTY = new Bounds(0, 0, 0, 0);
+
+	/**
+	 * Bounds that contain no pixels.
+	 *
+	 * @return empty bounds
+	 */
+
+	public static Bounds empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Bounds with the specified edges. If the right edge does not exceed the
+	 * left edge, or the bottom edge does not exceed the top edge, the bounds
+	 * are empty.
+	 *
+	 * @param left
+	 *            the left edge, inclusive
+	 * @param top
+	 *            the top edge, inclusive
+	 * @param right
+	 *            the right edge, exclusive
+	 * @param bottom
+	 *            the bottom edge, exclusive
+	 * @return bounds with the specified edges
+	 */
+
+	public static Bounds of(int left, int top, int right, int bottom) {
+		return right <= left || bottom <= top ? EMPTY : new Bounds(left, top, right, bottom);
+	}
+
+	// fields
+
+	private final int left;
+	private final int top;
+	private final int right;
+	private final int bottom;
+
+	private Bounds(int left, int top, int right, int bottom) {
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+	}
+
+	// accessors
+
+	/**
+	 * The x coordinate of the left-most pixel column in the bounds.
+	 *
+	 * @return the left edge
+	 */
+
+	public int left() {
+		return left;
+	}
+
+	/**
+	 * The y coordinate of the top-most pixel row in the bounds.
+	 *
+	 * @return the top edge
+	 */
+
+	public int top() {
+		return top;
+	}
+
+	/**
+	 * The x coordinate immediately to the right of the bounds.
+	 *
+	 * @return the right edge
+	 */
+
+	public int right() {
+		return right;
+	}
+
+	/**
+	 * The y coordinate immediately below the bounds.
+	 *
+	 * @return the bottom edge
+	 */
+
+	public int bottom() {
+		return bottom;
+	}
+
+	/**
+	 * The number of pixel columns in the bounds.
+	 *
+	 * @return the width of the bounds
+	 */
+
+	public int width() {
+		return right - left;
+	}
+
+	/**
+	 * The number of pixel rows in the bounds.
+	 *
+	 * @return the height of the bounds
+	 */
+
+	public int height() {
+		return bottom - top;
+	}
+
+	/**
+	 * Whether the bounds contain no pixels.
+	 *
+	 * @return true if the bounds are empty, false otherwise
+	 */
+
+	public boolean isEmpty() {
+		return this == EMPTY;
+	}
+
+	// methods
+
+	/**
+	 * Whether the bounds contain the pixel at the given coordinates.
+	 *
+	 * @param x
+	 *            the x coordinate
+	 * @param y
+	 *            the y coordinate
+	 * @return true if the pixel lies within the bounds, false otherwise
+	 */
+
+	public boolean contains(int x, int y) {
+		return x >= left && x < right && y >= top && y < bottom;
+	}
+
+	/**
+	 * The smallest bounds that contain both these bounds and those supplied.
+	 *
+	 * @param that
+	 *            any bounds
+	 * @return the union of the bounds
+	 */
+
+	public Bounds union(Bounds that) {
+		if (that == null) throw new IllegalArgumentException("null that");
+		if (that.isEmpty()) return this;
+		if (this.isEmpty()) return that;
+		return new Bounds(
+				Math.min(this.left, that.left),
+				Math.min(this.top, that.top),
+				Math.max(this.right, that.right),
+				Math.max(this.bottom, that.bottom)
+				);
+	}
+
+	/**
+	 * These bounds moved by the specified distances.
+	 *
+	 * @param dx
+	 *            the horizontal distance
+	 * @param dy
+	 *            the vertical distance
+	 * @return the translated bounds
+	 */
+
+	public Bounds translate(int dx, int dy) {
+		if (isEmpty() || dx == 0 && dy == 0) return this;
+		return new Bounds(left + dx, top + dy, right + dx, bottom + dy);
+	}
+
+	// object methods
+
+	@Override
+	public int hashCode() {
+		return ((left * 31 + top) * 31 + right) * 31 + bottom;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof Bounds)) return false;
+		Bounds that = (Bounds) obj;
+		return this.left == that.left && this.top == that.top && this.right == that.right && this.bottom == that.bottom;
+	}
+
+	@Override
+	public String toString() {
+		return isEmpty() ? "[]" : "[" + left + "," + top + " - " + right + "," + bottom + "]";
+	}
+
+}
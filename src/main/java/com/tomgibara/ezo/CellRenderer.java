@@ -0,0 +1,277 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.PrimitiveIterator.OfInt;
+
+/**
+ * <p>
+ * Renders text in an {@link Ezo} font as lines of Unicode characters, each of
+ * which depicts a small block of pixels. This allows Ezo text to be displayed
+ * on character terminals. Instances of this class are obtained from the
+ * {@link Ezo#cellRenderer(Cell)} method of {@link Ezo}.
+ *
+ * <p>
+ * Glyph rows are read directly from the font and combined into cells via
+ * lookup tables. The cells are written to an {@link Appendable} as soon as
+ * they are complete, so rendering requires only a small fixed amount of
+ * memory, regardless of the length of the text.
+ *
+ * <p>
+ * This class can be used by multiple threads without external synchronization.
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class CellRenderer {
+
+	// statics
+
+	private static final int HEIGHT = 8; // the number of pixel rows covered by the text, ascent plus descent
+	private static final int UNDERLINE_ROW = 7; // the glyph row on which an underline is drawn
+	private static final int WINDOW = 16; // the number of cells that may be incomplete at any time, must be a power of two
+
+	/**
+	 * The types of character cell into which pixels may be rendered.
+	 */
+
+	public enum Cell {
+
+		/**
+		 * Block characters, each depicting two pixels horizontally and two
+		 * pixels vertically.
+		 */
+
+		QUADRANT(2, new char[] {
+				' ', '▘', '▝', '▀',
+				'▖', '▌', '▞', '▛',
+				'▗', '▚', '▐', '▜',
+				'▄', '▙', '▟', '█',
+		}, new int[][] {
+			{ 0x01, 0x02 },
+			{ 0x04, 0x08 },
+		}),
+
+		/**
+		 * Braille patterns, each depicting two pixels horizontally and four
+		 * pixels vertically.
+		 */
+
+		BRAILLE(4, braille(), new int[][] {
+			{ 0x01, 0x08 },
+			{ 0x02, 0x10 },
+			{ 0x04, 0x20 },
+			{ 0x40, 0x80 },
+		});
+
+		final int height;   // the number of pixel rows covered by the cell
+		final char[] chars; // the character for each combination of pixels
+		final int[][] bits; // for each row of the cell, the bits for pairs of pixels, indexed by pair
+
+		private Cell(int height, char[] chars, int[][] dots) {
+			this.height = height;
+			this.chars = chars;
+			bits = new int[height][4];
+			for (int r = 0; r < height; r++) {
+				bits[r][1] = dots[r][1];
+				bits[r][2] = dots[r][0];
+				bits[r][3] = dots[r][0] | dots[r][1];
+			}
+		}
+
+		/**
+		 * The number of pixels depicted by a cell horizontally.
+		 *
+		 * @return the width of the cell in pixels
+		 */
+
+		public int pixelWidth() {
+			return 2;
+		}
+
+		/**
+		 * The number of pixels depicted by a cell vertically.
+		 *
+		 * @return the height of the cell in pixels
+		 */
+
+		public int pixelHeight() {
+			return height;
+		}
+
+		private static char[] braille() {
+			char[] chars = new char[256];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char) (0x2800 + i);
+			}
+			return chars;
+		}
+	}
+
+	private final Ezo ezo;
+	private final Cell cell;
+
+	CellRenderer(Ezo ezo, Cell cell) {
+		this.ezo = ezo;
+		this.cell = cell;
+	}
+
+	// public accessors
+
+	/**
+	 * The Ezo font that backs this renderer.
+	 *
+	 * @return the ezo instance from which this renderer was created
+	 */
+
+	public Ezo ezo() {
+		return ezo;
+	}
+
+	/**
+	 * The type of cell into which pixels are rendered.
+	 *
+	 * @return the cell type
+	 */
+
+	public Cell cell() {
+		return cell;
+	}
+
+	/**
+	 * The number of lines of cells output for each rendering.
+	 *
+	 * @return the number of lines required to accommodate the height of the
+	 *         font
+	 */
+
+	public int lineCount() {
+		return HEIGHT / cell.height;
+	}
+
+	// public methods
+
+	/**
+	 * The number of cells in each line output when rendering the supplied
+	 * string.
+	 *
+	 * @param str
+	 *            any string
+	 * @return the number of cells required to accommodate the rendered width
+	 *         of the string
+	 */
+
+	public int widthOfString(String str) {
+		return (ezo.renderedWidthOfString(str) + 1) >> 1;
+	}
+
+	/**
+	 * Renders the supplied string as {@link #lineCount()} lines of cells, each
+	 * of {@link #widthOfString(String)} characters and terminated with a line
+	 * feed. The left-hand-side of the string is aligned with the first cell of
+	 * each line, and the top line of cells starts at the ascent of the font.
+	 * Non-printable and unsupported characters are omitted.
+	 *
+	 * @param str
+	 *            the string to be rendered
+	 * @param out
+	 *            the destination for the rendered cells
+	 * @throws IOException
+	 *             if the characters could not be appended
+	 */
+
+	public void renderString(String str, Appendable out) throws IOException {
+		if (out == null) throw new IllegalArgumentException("null out");
+		int width = widthOfString(str);
+		int[] window = new int[WINDOW];
+		int lines = lineCount();
+		for (int line = 0; line < lines; line++) {
+			renderLine(str, out, line * cell.height, width, window);
+			out.append('\n');
+		}
+	}
+
+	// private helper methods
+
+	// each window entry holds the cell bits in the low byte and the ink of the underline row in the two bits above
+	private void renderLine(String str, Appendable out, int top, int width, int[] window) throws IOException {
+		boolean underline = ezo.isUnderlined() && top <= UNDERLINE_ROW && UNDERLINE_ROW < top + cell.height;
+		Arrays.fill(window, 0);
+		int[][] bits = cell.bits;
+		int rows = cell.height;
+		int shift = 56 - top * 8;
+		// ink in the cell left of the text can interrupt the underline, so include it in the window
+		int first = -1;
+		int pen = 0;
+		int prev = -1;
+		for (OfInt cs = str.chars().iterator(); cs.hasNext(); ) {
+			int next = cs.nextInt();
+			if (ezo.printable(next)) {
+				// no subsequent glyph (or underline gap) can reach cells left of this
+				first = flush(out, window, first, Math.min(width, Math.floorDiv(pen - 6, 2)), underline ? Integer.MAX_VALUE : -1);
+				int left = pen + ezo.left(prev, next);
+				int k = Math.floorDiv(left, 2);
+				int odd = left & 1;
+				long bitmap = ezo.bitmap(next);
+				for (int r = 0; r < rows; r++) {
+					// align the row so that its pixels pair within cells
+					int row = ((int) (bitmap >>> (shift - r * 8)) & 0xff) << 8 >>> odd;
+					int[] rowBits = bits[r];
+					for (int i = 0; row != 0; i++, row = (row << 2) & 0xffff) {
+						window[(k + i) & (WINDOW - 1)] |= rowBits[row >>> 14];
+					}
+				}
+				if (underline) {
+					int row = ((int) bitmap & 0xff) << 8 >>> odd;
+					for (int i = 0; row != 0; i++, row = (row << 2) & 0xffff) {
+						window[(k + i) & (WINDOW - 1)] |= (row >>> 14) << 8;
+					}
+				}
+				pen += ezo.advance(prev, next);
+			}
+			prev = next;
+		}
+		flush(out, window, first, width, underline && prev != -1 ? pen + ezo.overhang(prev) : -1);
+	}
+
+	// outputs cells up to (but excluding) to, returns the index of the first cell yet to be output
+	private int flush(Appendable out, int[] window, int from, int to, int lineLength) throws IOException {
+		char[] chars = cell.chars;
+		int[] lineBits = cell.bits[UNDERLINE_ROW % cell.height];
+		int k = from;
+		for (; k < to; k++) {
+			int value = window[k & (WINDOW - 1)];
+			// the underline ink of a cell is needed until its successor is output
+			int before = window[(k - 1) & (WINDOW - 1)];
+			window[(k - 1) & (WINDOW - 1)] = 0;
+			if (k < 0) continue;
+			if (lineLength > 0) {
+				// underline pixels are skipped if adjacent to ink on the same row
+				int ink = (before >> 8 & 1) << 3 | (value >> 8) << 1 | window[(k + 1) & (WINDOW - 1)] >> 9 & 1;
+				int pair = 0;
+				if ((ink & 0xe) == 0 && 2 * k     < lineLength) pair |= 2;
+				if ((ink & 0x7) == 0 && 2 * k + 1 < lineLength) pair |= 1;
+				value |= lineBits[pair];
+			}
+			out.append(chars[value & 0xff]);
+		}
+		return k;
+	}
+}
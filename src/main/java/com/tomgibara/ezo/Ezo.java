@@ -19,7 +19,7 @@ package com.tomgibara.ezo;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.BitSet;
+import java.util.Arrays;
 import java.util.PrimitiveIterator.OfInt;
 
 /**
@@ -35,7 +35,8 @@ import java.util.PrimitiveIterator.OfInt;
  * The typeface also supports underlining via {@link #withUnderline(boolean)}
  * and adjusted word spacing via {@link #withWidthOfSpace(int)} in addition to
  * weighting via {@link #withBold(boolean)} and italicization via
- * {@link #withItalic(boolean)}.
+ * {@link #withItalic(boolean)}. Smoothly enlarged variants of every style are
+ * available via {@link #withScale(int)}.
  *
  * <p>
  * Rendering the typeface is performed by supplying a {@link Plotter} to the
@@ -44,7 +45,15 @@ import java.util.PrimitiveIterator.OfInt;
  * {@link #renderedWidthOfChar(int)} method may be used to compute spans prior
  * to rendering and this can be combined with measurements from
  * {@link #ascent()} and {@link #descent()} to compute simple bounding boxes for
- * text.
+ * text. Tight bounds for the ink of a string are available from
+ * {@link #inkBounds(String)} and renderers report the bounds of the pixels
+ * plotted by each call via {@link Renderer#dirtyBounds()}.
+ *
+ * <p>
+ * Text may also be rendered at right angles by rotating a renderer with
+ * {@link Renderer#rotate(int)}. The runs of ink in each glyph are listed once
+ * per style for every rotation, so that rendering visits only inked pixels
+ * and always supplies them to the plotter in rows of the target.
  *
  * <p>
  * This class can be used by multiple threads without external synchronization.
@@ -70,11 +79,40 @@ public final class Ezo {
 	private static final int ASCENT = 6;
 	private static final int DESCENT = 2;
 
+	// unit vectors of the baseline for each quarter turn of rotation (clockwise)
+	private static final int[] BASE_X = {  1,  0, -1,  0 };
+	private static final int[] BASE_Y = {  0,  1,  0, -1 };
+	private static final int MAX_SCALE = 3;
+	private static final int PAIRED_LENGTH = 256; // the length of string at which widths are summed from a table of character pairs
+	private static final int PAIRED_CHUNK = 4096; // the number of characters copied from a string at a time to sum their widths
+
 	private static final Ezo regularEzo    = new Ezo(false, false);
 	private static final Ezo boldEzo       = new Ezo(true,  false);
 	private static final Ezo italicEzo     = new Ezo(false, true );
 	private static final Ezo boldItalicEzo = new Ezo(true,  true );
 
+	// the base styles at each scale, indexed by style, with bold in the low bit and italic in the next
+	private static final Ezo[] unscaledEzos = { regularEzo, boldEzo, italicEzo, boldItalicEzo };
+
+	// the base style with the specified weight, italicization and scale; larger scales are enlarged when first required
+	private static Ezo baseEzo(boolean bold, boolean italic, int scale) {
+		int index = (bold ? 1 : 0) | (italic ? 2 : 0);
+		switch (scale) {
+		case 1 : return unscaledEzos[index];
+		case 2 : return Scale2.ezos[index];
+		default: return Scale3.ezos[index];
+		}
+	}
+
+	private static Ezo[] scaled(int scale) {
+		return new Ezo[] {
+				new Ezo(regularEzo,    scale),
+				new Ezo(boldEzo,       scale),
+				new Ezo(italicEzo,     scale),
+				new Ezo(boldItalicEzo, scale),
+		};
+	}
+
 	/**
 	 * The regular weight Ezo font.
 	 *
@@ -111,7 +149,8 @@ public final class Ezo {
 	private final boolean bold;
 	private final boolean italic;
 	private final boolean underline;
-	private final int     spaceWidth;
+	private final int     spaceWidth; // the width of a space at the native scale
+	private final int     scale;
 
 	// font data
 	private final byte[] offsets;   // distance in pixels to start of character on baseline
@@ -120,6 +159,13 @@ public final class Ezo {
 	private final byte[] classes;   // classes contains the classifications used to kern individual letter pairs.
 	private final byte[] italics;   // italics contains the classifications used adjust italic kerning.
 	private final long[] bitmaps;   // bitmaps contains the the individual glyph bitmaps
+	private final int[][] extents;  // extents contains the bounds of the ink in each glyph, for each quarter turn of rotation
+	private final byte[][][] spans; // spans contains the runs of ink in each glyph as column, row and length triples, for each quarter turn of rotation
+	private final int[] descents;   // descents contains the ink on the underline rows of each glyph, with the left-most column in the lowest bit
+	private final int[] boxX;       // boxX and boxY contain the position of the top-left of each rotated glyph box
+	private final int[] boxY;       // relative to the left of the glyph on the baseline, for each quarter turn of rotation
+
+	private volatile int[] pairs = null; // the advance of each character after its predecessor, computed when first needed
 
 	// constructor for static instances only
 	private Ezo(boolean bold, boolean italic) {
@@ -149,13 +195,41 @@ public final class Ezo {
 			throw new RuntimeException("failed to load ezo data from resource " + path);
 		}
 		this.spaceWidth = widths[MIN_CHAR];
+		this.scale = 1;
+		int[][] glyphs = glyphs(bitmaps, scale);
+		int[][][] turned = { glyphs, turn(glyphs, scale, 1), turn(glyphs, scale, 2), turn(glyphs, scale, 3) };
+		extents = new int[][] { extents(turned[0], scale), extents(turned[1], scale), extents(turned[2], scale), extents(turned[3], scale) };
+		spans = new byte[][][] { spans(turned[0], scale), spans(turned[1], scale), spans(turned[2], scale), spans(turned[3], scale) };
+		descents = descents(glyphs, scale);
+		boxX = boxX(scale);
+		boxY = boxY(scale);
+	}
+
+	// constructor for static scaled instances only
+	private Ezo(Ezo src, int scale) {
+		this.bold = src.bold;
+		this.italic = src.italic;
+		this.underline = false;
+		this.offsets = scaled(src.offsets, scale);
+		this.baselines = scaled(src.baselines, scale);
+		this.widths = scaled(src.widths, scale);
+		this.classes = src.classes;
+		this.italics = src.italics;
+		this.bitmaps = src.bitmaps;
+		this.spaceWidth = src.spaceWidth;
+		this.scale = scale;
+		int[][] glyphs = glyphs(bitmaps, scale);
+		int[][][] turned = { glyphs, turn(glyphs, scale, 1), turn(glyphs, scale, 2), turn(glyphs, scale, 3) };
+		extents = new int[][] { extents(turned[0], scale), extents(turned[1], scale), extents(turned[2], scale), extents(turned[3], scale) };
+		spans = new byte[][][] { spans(turned[0], scale), spans(turned[1], scale), spans(turned[2], scale), spans(turned[3], scale) };
+		descents = descents(glyphs, scale);
+		boxX = boxX(scale);
+		boxY = boxY(scale);
 	}
 
 	// constructor for derived instances
-	private Ezo(boolean bold, boolean italic, boolean underline, int spaceWidth) {
-		Ezo src = italic ?
-				bold ? boldItalicEzo : italicEzo :
-				bold ? boldEzo : regularEzo;
+	private Ezo(boolean bold, boolean italic, boolean underline, int spaceWidth, int scale) {
+		Ezo src = baseEzo(bold, italic, scale);
 		this.bold = bold;
 		this.italic = italic;
 		this.underline = underline;
@@ -165,7 +239,13 @@ public final class Ezo {
 		this.classes = src.classes;
 		this.italics = src.italics;
 		this.bitmaps = src.bitmaps;
-		this.spaceWidth = spaceWidth < 0 ? widths[MIN_CHAR] : spaceWidth;
+		this.extents = src.extents;
+		this.spans = src.spans;
+		this.descents = src.descents;
+		this.boxX = src.boxX;
+		this.boxY = src.boxY;
+		this.spaceWidth = spaceWidth;
+		this.scale = scale;
 	}
 
 	// public constructors
@@ -185,7 +265,7 @@ public final class Ezo {
 		if (this == regularEzo) return boldEzo;
 		if (this == boldEzo) return regularEzo;
 		if (this == italicEzo) return boldItalicEzo;
-		return new Ezo(bold, italic, underline, spaceWidth);
+		return new Ezo(bold, italic, underline, spaceWidth, scale);
 	}
 
 	/**
@@ -204,24 +284,55 @@ public final class Ezo {
 		if (this == boldEzo      ) return boldItalicEzo;
 		if (this == italicEzo    ) return regularEzo;
 		if (this == boldItalicEzo) return boldEzo;
-		return new Ezo(bold, italic, underline, spaceWidth);
+		return new Ezo(bold, italic, underline, spaceWidth, scale);
 	}
 
 	public Ezo withUnderline(boolean underline) {
-		return new Ezo(bold, italic, underline, spaceWidth);
+		return new Ezo(bold, italic, underline, spaceWidth, scale);
 	}
 	/**
-	 * This style of the Ezo font with the "space width" as specified.
+	 * This style of the Ezo font with the "space width" as specified. The
+	 * width of a space in a scaled font must be a multiple of its scale, so
+	 * that the width is preserved exactly as the font changes scale.
 	 *
 	 * @param spaceWidth
-	 *            a non-negative size in pixels
+	 *            a non-negative size in pixels, a multiple of the scale
 	 * @return an Ezo font
 	 * @see #widthOfSpace()
 	 */
 
 	public Ezo withWidthOfSpace(int spaceWidth) {
 		if (spaceWidth < 0) throw new IllegalArgumentException("negative spaceWidth");
-		return this.spaceWidth == spaceWidth ? this : new Ezo(bold, italic, underline, spaceWidth);
+		if (spaceWidth % scale != 0) throw new IllegalArgumentException("spaceWidth not a multiple of scale");
+		spaceWidth /= scale;
+		return this.spaceWidth == spaceWidth ? this : new Ezo(bold, italic, underline, spaceWidth, scale);
+	}
+
+	/**
+	 * <p>
+	 * This style of the Ezo font at the scale specified. The glyphs of scaled
+	 * fonts are enlarged once, when they are first required, using the EPX
+	 * (Scale2x) algorithm at twice the size and the Scale3x algorithm at three
+	 * times the size. Both algorithms smooth diagonal edges while preserving
+	 * the shape of the glyphs. Every metric of a scaled font, including its
+	 * kerning, is multiplied by the scale, as is the width of a space, and
+	 * underlines are thickened to match.
+	 *
+	 * <p>
+	 * Scaled fonts are rendered in the same way as the font at its native
+	 * scale, and only fonts with the same scale may be combined in
+	 * {@link StyledText}.
+	 *
+	 * @param scale
+	 *            the scale of the font, 1, 2 or 3
+	 * @return an Ezo font
+	 * @see #scale()
+	 */
+
+	public Ezo withScale(int scale) {
+		if (scale < 1 || scale > MAX_SCALE) throw new IllegalArgumentException("invalid scale");
+		if (scale == this.scale) return this;
+		return new Ezo(bold, italic, underline, spaceWidth, scale);
 	}
 
 	// public accessors
@@ -234,7 +345,7 @@ public final class Ezo {
 	 */
 
 	public int ascent() {
-		return ASCENT;
+		return ASCENT * scale;
 	}
 
 	/**
@@ -245,7 +356,7 @@ public final class Ezo {
 	 */
 
 	public int descent() {
-		return DESCENT;
+		return DESCENT * scale;
 	}
 
 	/**
@@ -271,6 +382,17 @@ public final class Ezo {
 		return italic;
 	}
 
+	/**
+	 * Whether the font is underlined.
+	 *
+	 * @return true if the font is underlined, or false if not
+	 * @see #withUnderline(boolean)
+	 */
+
+	public boolean isUnderlined() {
+		return underline;
+	}
+
 	/**
 	 * A convenient method for identifying the width of a space. Equivalent to
 	 * {@code widthOf(' ')}.
@@ -280,7 +402,18 @@ public final class Ezo {
 	 */
 
 	public int widthOfSpace() {
-		return spaceWidth;
+		return spaceWidth * scale;
+	}
+
+	/**
+	 * The factor by which the glyphs and metrics of the font are enlarged.
+	 *
+	 * @return the scale of the font, 1 for the native scale
+	 * @see #withScale(int)
+	 */
+
+	public int scale() {
+		return scale;
 	}
 
 	// public methods
@@ -296,7 +429,48 @@ public final class Ezo {
 
 	public Renderer renderer(Plotter plotter) {
 		if (plotter == null) throw new IllegalArgumentException("null plotter");
-		return new Renderer(plotter);
+		return new Renderer(plotter, false);
+	}
+
+	/**
+	 * Creates a new renderer that can draw strings in this font as lines of
+	 * Unicode characters, for display on character terminals. The characters
+	 * always depict the font at its native scale.
+	 *
+	 * @param cell
+	 *            the type of character cell into which pixels are rendered
+	 * @return a cell renderer for this font.
+	 */
+
+	public CellRenderer cellRenderer(CellRenderer.Cell cell) {
+		if (cell == null) throw new IllegalArgumentException("null cell");
+		return new CellRenderer(withScale(1), cell);
+	}
+
+	/**
+	 * Creates a new renderer that draws characters in this font into a grid of
+	 * fixed-width cells, for column-aligned text.
+	 *
+	 * @param plotter
+	 *            an object used to plot the pixels with which characters are
+	 *            composed
+	 * @return a grid renderer for this font.
+	 */
+
+	public GridRenderer gridRenderer(Plotter plotter) {
+		if (plotter == null) throw new IllegalArgumentException("null plotter");
+		return new GridRenderer(this, plotter);
+	}
+
+	/**
+	 * Creates a new renderer that can draw strings in this font as compact
+	 * SVG path elements.
+	 *
+	 * @return an SVG renderer for this font.
+	 */
+
+	public SvgRenderer svgRenderer() {
+		return new SvgRenderer(this);
 	}
 
 	/**
@@ -322,6 +496,10 @@ public final class Ezo {
 
 	public int baselineWidthOfString(String str) {
 		if (str == null) throw new IllegalArgumentException("null str");
+		if (str.length() >= PAIRED_LENGTH) {
+			int width = pairedWidth(str, 0, str.length());
+			if (width >= 0) return width;
+		}
 		OfInt cs = str.codePoints().iterator();
 		int sum = 0;
 		int prev = -1;
@@ -363,6 +541,137 @@ public final class Ezo {
 		return bw - baselineWidth(c) + pixelWidth(c) - offset(c);
 	}
 
+	/**
+	 * <p>
+	 * Computes the baseline width of the supplied integer as it would be
+	 * rendered by {@link Renderer#renderLong(long, NumberStyle)}. Because the
+	 * digits of this font are tabular, the width is computed from the number
+	 * of digits, without formatting the value or kerning each of its
+	 * characters.
+	 *
+	 * @param value
+	 *            any value, counted in units of the style's last decimal place
+	 * @param style
+	 *            the layout of the number
+	 * @return the width of the number as rendered in this font
+	 * @see #renderedWidthOfLong(long, NumberStyle)
+	 */
+
+	public int baselineWidthOfLong(long value, NumberStyle style) {
+		if (style == null) throw new IllegalArgumentException("null style");
+		return numberWidth(value > 0L ? -value : value, value < 0L, style, false);
+	}
+
+	/**
+	 * <p>
+	 * Computes the width required to accommodate a rendering of the supplied
+	 * integer by {@link Renderer#renderLong(long, NumberStyle)}.
+	 *
+	 * @param value
+	 *            any value, counted in units of the style's last decimal place
+	 * @param style
+	 *            the layout of the number
+	 * @return the width of the number as rendered in this font
+	 * @see #baselineWidthOfLong(long, NumberStyle)
+	 */
+
+	public int renderedWidthOfLong(long value, NumberStyle style) {
+		if (style == null) throw new IllegalArgumentException("null style");
+		return numberWidth(value > 0L ? -value : value, value < 0L, style, true);
+	}
+
+	/**
+	 * <p>
+	 * Computes the baseline width of the supplied number as it would be
+	 * rendered by {@link Renderer#renderDouble(double, NumberStyle)}, with the
+	 * value rounded as described by {@link NumberStyle}. Unless the value is
+	 * not finite or too large to be counted in a long, the width is computed
+	 * from the number of digits, without formatting the value or kerning each
+	 * of its characters.
+	 *
+	 * @param value
+	 *            any value
+	 * @param style
+	 *            the layout of the number
+	 * @return the width of the number as rendered in this font
+	 * @see #renderedWidthOfDouble(double, NumberStyle)
+	 */
+
+	public int baselineWidthOfDouble(double value, NumberStyle style) {
+		if (style == null) throw new IllegalArgumentException("null style");
+		long negated = NumberStyle.negatedUnits(value, style.decimals());
+		if (negated > 0L) return baselineWidthOfString(style.format(value));
+		return numberWidth(negated, value < 0.0, style, false);
+	}
+
+	/**
+	 * <p>
+	 * Computes the width required to accommodate a rendering of the supplied
+	 * number by {@link Renderer#renderDouble(double, NumberStyle)}, with the
+	 * value rounded as described by {@link NumberStyle}.
+	 *
+	 * @param value
+	 *            any value
+	 * @param style
+	 *            the layout of the number
+	 * @return the width of the number as rendered in this font
+	 * @see #baselineWidthOfDouble(double, NumberStyle)
+	 */
+
+	public int renderedWidthOfDouble(double value, NumberStyle style) {
+		if (style == null) throw new IllegalArgumentException("null style");
+		long negated = NumberStyle.negatedUnits(value, style.decimals());
+		if (negated > 0L) return renderedWidthOfString(style.format(value));
+		return numberWidth(negated, value < 0.0, style, true);
+	}
+
+	/**
+	 * <p>
+	 * Computes the tightest bounds that contain every pixel plotted when
+	 * rendering the supplied string in this font, including any underline.
+	 * The bounds are relative to a renderer located at the origin, so that
+	 * the top of the bounds is negative for any string with ink above the
+	 * baseline. The bounds are computed from the extents of the glyphs,
+	 * without rendering them.
+	 *
+	 * @param str
+	 *            any string
+	 * @return the bounds of the string's ink, empty if the string has no ink
+	 * @see Renderer#dirtyBounds()
+	 */
+
+	public Bounds inkBounds(String str) {
+		Renderer renderer = new Renderer(null, true);
+		renderer.renderString(str);
+		return renderer.dirtyBounds();
+	}
+
+	/**
+	 * <p>
+	 * Measures the supplied string in parallel, recording the baseline widths
+	 * of its prefixes at regular intervals. This is intended for very long
+	 * strings, for which the total width is then available from
+	 * {@link WidthIndex#baselineWidth()} and the width of any prefix can be
+	 * computed without measuring more characters than the sample interval.
+	 *
+	 * <p>
+	 * Measurements obtained from the index are identical to those of
+	 * {@link #baselineWidthOfString(String)} and
+	 * {@link #accommodatedCharCount(String, int, int)}.
+	 *
+	 * @param str
+	 *            any string
+	 * @param interval
+	 *            the number of characters between samples
+	 * @return an index of the widths of the string's prefixes
+	 */
+
+	public WidthIndex widthIndex(String str, int interval) {
+		if (str == null) throw new IllegalArgumentException("null str");
+		if (interval < 1) throw new IllegalArgumentException("non-positive interval");
+		return WidthIndex.build(this, str, interval);
+	}
+
 	/**
 	 * <p>
 	 * The distance advanced along the baseline when rendering the specified
@@ -443,16 +752,386 @@ public final class Ezo {
 		return i;
 	}
 
+	// package scoped methods
+
+	// measures the code points that start within [from, to) of the string, kerned against any code point that precedes them
+	// if stats is not null, the number of code points is stored in its first element and the furthest that any of
+	// their renderings extends beyond the start of the measurement, as tested by accommodatedCharCount, in its second
+	int measure(String str, int from, int to, int[] stats) {
+		if (stats == null && to - from >= PAIRED_LENGTH) {
+			int width = pairedWidth(str, from, to);
+			if (width >= 0) return width;
+		}
+		int i = codePointStart(str, from);
+		int prev = i == 0 ? -1 : str.codePointBefore(i);
+		int sum = 0;
+		int count = 0;
+		int reach = Integer.MIN_VALUE;
+		while (i < to) {
+			int next = str.codePointAt(i);
+			int delta = delta(prev, next);
+			if (stats != null) reach = Math.max(reach, sum + delta + pixelWidth(next) - offset(next));
+			sum += delta + baselineWidth(next);
+			prev = next;
+			count ++;
+			i += Character.charCount(next);
+		}
+		if (stats != null) {
+			stats[0] = count;
+			stats[1] = reach;
+		}
+		return sum;
+	}
+
+	// the number of code points from the specified index that fit within the width, given the width already used
+	int accommodated(String str, int from, int sum, int width) {
+		int i = codePointStart(str, from);
+		int prev = i == 0 ? -1 : str.codePointBefore(i);
+		int count = 0;
+		while (i < str.length()) {
+			int next = str.codePointAt(i);
+			int delta = delta(prev, next);
+			if (sum + delta + pixelWidth(next) - offset(next) > width) break;
+			sum += delta + baselineWidth(next);
+			prev = next;
+			count ++;
+			i += Character.charCount(next);
+		}
+		return count;
+	}
+
+	// whether the character has a glyph that a renderer will render
+	boolean printable(int c) {
+		return pixelWidth(c) > 0;
+	}
+
+	// the bitmap of a printable character
+	long bitmap(int c) {
+		return bitmaps[c];
+	}
+
+	// the unrotated runs of ink in the glyph of a printable character
+	byte[] spans(int c) {
+		return spans[0][c];
+	}
+
+	// the unrotated extent of the ink in the glyph of a printable character, packed as for extents, zero if it has no ink
+	int extent(int c) {
+		return extents[0][c];
+	}
+
+	// the ink of a printable character on the underline rows, with the left-most column in the lowest bit
+	int underlineInk(int c) {
+		return descents[c];
+	}
+
+	// the distance from the location of a renderer to the left of the glyph, may only be called with printable characters
+	int left(int prev, int next) {
+		return left(prev, this, next);
+	}
+
+	// as above, but where the next character is rendered in the specified style
+	int left(int prev, Ezo ezo, int next) {
+		return delta(prev, ezo, next) - ezo.offset(next);
+	}
+
+	// the distance a renderer advances when rendering the next character after the previous
+	int advance(int prev, int next) {
+		return advance(prev, this, next);
+	}
+
+	// as above, but where the next character is rendered in the specified style
+	int advance(int prev, Ezo ezo, int next) {
+		return ezo.printable(next) ? delta(prev, ezo, next) + ezo.baselineWidth(next) : 0;
+	}
+
+	// the distance the rendering of the last character extends beyond the advance
+	int overhang(int last) {
+		return pixelWidth(last) - offset(last) - baselineWidth(last);
+	}
+
+	// the advance of each supported ASCII character after its predecessor, indexed by the predecessor shifted seven bits
+	// one table is shared by the styles with the same weight, italicization and scale, in which spaces have their base width
+	int[] pairs() {
+		Ezo base = baseEzo(bold, italic, scale);
+		if (base != this) return base.pairs();
+		int[] pairs = this.pairs;
+		if (pairs == null) {
+			pairs = new int[MAX_CHAR << 7];
+			for (int prev = 0; prev < MAX_CHAR; prev++) {
+				for (int next = 0; next < MAX_CHAR; next++) {
+					pairs[prev << 7 | next] = delta(prev, next) + baselineWidth(next);
+				}
+			}
+			this.pairs = pairs;
+		}
+		return pairs;
+	}
+
 	// private utility methods
 
+	// the baseline width of the characters in [from, to) kerned against any preceding character, or -1 if any of the
+	// characters, including the preceding character, is not a supported ASCII character
+	private int pairedWidth(String str, int from, int to) {
+		Kernels kernels = Kernels.PREFERRED;
+		int[] pairs = pairs();
+		// the adjustment for each space that follows another character, since the table gives spaces their base width
+		int spaceAdjustment = (spaceWidth - baseEzo(bold, italic, scale).spaceWidth) * scale;
+		// the first element of the buffer holds the character preceding those being summed
+		char[] chars = new char[Math.min(to - from, PAIRED_CHUNK) + 1];
+		int sum = 0;
+		int i = from;
+		if (i == 0) {
+			char c = str.charAt(0);
+			if (c >= MAX_CHAR) return -1;
+			sum = baselineWidth(c);
+			i = 1;
+		}
+		while (i < to) {
+			int count = Math.min(to - i, PAIRED_CHUNK);
+			str.getChars(i - 1, i + count, chars, 0);
+			if (!kernels.below(chars, 0, count + 1, MAX_CHAR)) return -1;
+			sum += kernels.sumPairs(pairs, chars, 1, count + 1);
+			if (spaceAdjustment != 0) sum += spaceAdjustment * spaces(chars, 1, count + 1);
+			i += count;
+		}
+		return sum;
+	}
+
+	// the width of a number with a negated magnitude; digits are tabular, so only kerning around separators varies
+	private int numberWidth(long negated, boolean negative, NumberStyle style, boolean rendered) {
+		int count = style.digitCount(negated);
+		char sign = style.sign(negated, negative);
+		int width = count * baselineWidth('0');
+		int spacings = count - 1; // the number of adjacent digits
+		if (sign != '\0') width += baselineWidth(sign) + delta(sign, '0' + NumberStyle.digit(negated, count - 1));
+		for (int place = count - 1; place > 0; place--) {
+			if (!style.separated(place)) continue;
+			char separator = style.separator(place);
+			width += delta('0' + NumberStyle.digit(negated, place), separator) + baselineWidth(separator) + delta(separator, '0' + NumberStyle.digit(negated, place - 1));
+			spacings--;
+		}
+		width += spacings * delta('0', '0');
+		if (!rendered) return width;
+		int last = '0' + NumberStyle.digit(negated, 0);
+		return width - baselineWidth(last) + pixelWidth(last) - offset(last);
+	}
+
+	// the number of spaces in [from, to)
+	private static int spaces(char[] chars, int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (chars[i] == MIN_CHAR) count++;
+		}
+		return count;
+	}
+
+	// the index of the first code point that starts at or after the specified index
+	private static int codePointStart(String str, int index) {
+		if (index == 0 || index >= str.length()) return index;
+		return Character.isLowSurrogate(str.charAt(index)) && Character.isHighSurrogate(str.charAt(index - 1)) ? index + 1 : index;
+	}
+
+	// multiplies every metric by the scale
+	private static byte[] scaled(byte[] metrics, int scale) {
+		byte[] scaled = new byte[metrics.length];
+		for (int i = 0; i < metrics.length; i++) {
+			scaled[i] = (byte) (metrics[i] * scale);
+		}
+		return scaled;
+	}
+
+	// converts each 8x8 glyph bitmap into rows of pixels, enlarged by the specified scale
+	// each row holds 8 * scale pixels with the left-most in the highest bit
+	private static int[][] glyphs(long[] bitmaps, int scale) {
+		int[][] glyphs = new int[bitmaps.length][];
+		for (int i = 0; i < bitmaps.length; i++) {
+			int[] rows = new int[8];
+			for (int r = 0; r < 8; r++) {
+				rows[r] = (int) (bitmaps[i] >>> (56 - 8 * r)) & 0xff;
+			}
+			switch (scale) {
+			case 2 : rows = scale2x(rows); break;
+			case 3 : rows = scale3x(rows); break;
+			}
+			glyphs[i] = rows;
+		}
+		return glyphs;
+	}
+
+	// enlarges an 8x8 glyph using EPX, naming the neighbours of each pixel P as
+	//  A
+	// CPB
+	//  D
+	private static int[] scale2x(int[] src) {
+		int[] dst = new int[16];
+		for (int row = 0; row < 8; row++) {
+			for (int col = 0; col < 8; col++) {
+				boolean p = pixel(src, 8, row, col);
+				boolean a = pixel(src, 8, row - 1, col);
+				boolean b = pixel(src, 8, row, col + 1);
+				boolean c = pixel(src, 8, row, col - 1);
+				boolean d = pixel(src, 8, row + 1, col);
+				int y = row * 2;
+				int x = col * 2;
+				set(dst, 16, y,     x,     c == a && c != d && a != b ? a : p);
+				set(dst, 16, y,     x + 1, a == b && a != c && b != d ? b : p);
+				set(dst, 16, y + 1, x,     d == c && d != b && c != a ? c : p);
+				set(dst, 16, y + 1, x + 1, b == d && b != a && d != c ? d : p);
+			}
+		}
+		return dst;
+	}
+
+	// enlarges an 8x8 glyph using Scale3x, naming the neighbours of each pixel E as
+	// ABC
+	// DEF
+	// GHI
+	private static int[] scale3x(int[] src) {
+		int[] dst = new int[24];
+		for (int row = 0; row < 8; row++) {
+			for (int col = 0; col < 8; col++) {
+				boolean a = pixel(src, 8, row - 1, col - 1);
+				boolean b = pixel(src, 8, row - 1, col);
+				boolean c = pixel(src, 8, row - 1, col + 1);
+				boolean d = pixel(src, 8, row, col - 1);
+				boolean e = pixel(src, 8, row, col);
+				boolean f = pixel(src, 8, row, col + 1);
+				boolean g = pixel(src, 8, row + 1, col - 1);
+				boolean h = pixel(src, 8, row + 1, col);
+				boolean i = pixel(src, 8, row + 1, col + 1);
+				int y = row * 3;
+				int x = col * 3;
+				set(dst, 24, y,     x,     d == b && b != f && d != h ? d : e);
+				set(dst, 24, y,     x + 1, d == b && b != f && d != h && e != c || b == f && b != d && f != h && e != a ? b : e);
+				set(dst, 24, y,     x + 2, b == f && b != d && f != h ? f : e);
+				set(dst, 24, y + 1, x,     d == b && b != f && d != h && e != g || d == h && d != b && h != f && e != a ? d : e);
+				set(dst, 24, y + 1, x + 1, e);
+				set(dst, 24, y + 1, x + 2, b == f && b != d && f != h && e != i || h == f && d != h && b != f && e != c ? f : e);
+				set(dst, 24, y + 2, x,     d == h && d != b && h != f ? d : e);
+				set(dst, 24, y + 2, x + 1, d == h && d != b && h != f && e != i || h == f && d != h && b != f && e != g ? h : e);
+				set(dst, 24, y + 2, x + 2, h == f && d != h && b != f ? f : e);
+			}
+		}
+		return dst;
+	}
+
+	// whether a pixel of a square glyph is set, pixels beyond the glyph are clear
+	private static boolean pixel(int[] rows, int size, int r, int c) {
+		if (r < 0 || c < 0 || r >= size || c >= size) return false;
+		return (rows[r] >> (size - 1 - c) & 1) != 0;
+	}
+
+	private static void set(int[] rows, int size, int r, int c, boolean set) {
+		if (set) rows[r] |= 1 << (size - 1 - c);
+	}
+
+	// rotates every glyph clockwise by the specified number of quarter turns
+	private static int[][] turn(int[][] glyphs, int scale, int turns) {
+		int size = 8 * scale;
+		int[][] turned = new int[glyphs.length][];
+		for (int i = 0; i < glyphs.length; i++) {
+			int[] t = new int[size];
+			for (int r = 0; r < size; r++) {
+				for (int c = 0; c < size; c++) {
+					if (!pixel(glyphs[i], size, r, c)) continue;
+					int tr, tc;
+					switch (turns) {
+					case 1 : tr = c;            tc = size - 1 - r; break;
+					case 2 : tr = size - 1 - r; tc = size - 1 - c; break;
+					case 3 : tr = size - 1 - c; tc = r;            break;
+					default: tr = r;            tc = c;            break;
+					}
+					set(t, size, tr, tc, true);
+				}
+			}
+			turned[i] = t;
+		}
+		return turned;
+	}
+
+	// computes the bounds of the ink in each glyph, packed into an int as left, top, right and bottom bytes
+	private static int[] extents(int[][] glyphs, int scale) {
+		int size = 8 * scale;
+		int[] extents = new int[glyphs.length];
+		for (int i = 0; i < glyphs.length; i++) {
+			int[] rows = glyphs[i];
+			int top = size;
+			int bottom = 0;
+			int cols = 0; // all rows combined, to find the occupied columns
+			for (int r = 0; r < size; r++) {
+				if (rows[r] == 0) continue;
+				top = Math.min(top, r);
+				bottom = r + 1;
+				cols |= rows[r];
+			}
+			if (cols == 0) continue;
+			int left = Integer.numberOfLeadingZeros(cols) - (32 - size);
+			int right = size - Integer.numberOfTrailingZeros(cols);
+			extents[i] = left << 24 | top << 16 | right << 8 | bottom;
+		}
+		return extents;
+	}
+
+	// lists the horizontal runs of ink in each glyph as column, row and length triples
+	private static byte[][] spans(int[][] glyphs, int scale) {
+		int size = 8 * scale;
+		byte[][] spans = new byte[glyphs.length][];
+		byte[] triples = new byte[size * (size + 1) / 2 * 3]; // a row contains at most half its pixels rounded up as runs
+		for (int i = 0; i < glyphs.length; i++) {
+			int count = 0;
+			for (int r = 0; r < size; r++) {
+				int row = glyphs[i][r] << (32 - size);
+				while (row != 0) {
+					int start = Integer.numberOfLeadingZeros(row);
+					int length = Integer.numberOfLeadingZeros(~(row << start));
+					triples[count++] = (byte) start;
+					triples[count++] = (byte) r;
+					triples[count++] = (byte) length;
+					row = start + length == 32 ? 0 : row & (-1 >>> (start + length));
+				}
+			}
+			spans[i] = Arrays.copyOf(triples, count);
+		}
+		return spans;
+	}
+
+	// combines the rows of each glyph that lie under the underline, reversed so that the left-most column is in the lowest bit
+	private static int[] descents(int[][] glyphs, int scale) {
+		int size = 8 * scale;
+		int[] descents = new int[glyphs.length];
+		for (int i = 0; i < glyphs.length; i++) {
+			int rows = 0;
+			for (int r = size - scale; r < size; r++) {
+				rows |= glyphs[i][r];
+			}
+			descents[i] = Integer.reverse(rows) >>> (32 - size);
+		}
+		return descents;
+	}
+
+	// the horizontal positions of the top-left of the rotated glyph boxes, relative to the left of the glyph on the baseline
+	private static int[] boxX(int scale) {
+		int size = 8 * scale;
+		int ascent = ASCENT * scale;
+		return new int[] { 0, ascent - size + 1, 1 - size, -ascent };
+	}
+
+	// the vertical positions of the top-left of the rotated glyph boxes, relative to the left of the glyph on the baseline
+	private static int[] boxY(int scale) {
+		int size = 8 * scale;
+		int ascent = ASCENT * scale;
+		return new int[] { -ascent, 0, ascent - size + 1, 1 - size };
+	}
+
 	private int pixelWidth(int c) {
-		if (c == MIN_CHAR) return spaceWidth;
+		if (c == MIN_CHAR) return spaceWidth * scale;
 		if (c >= MAX_CHAR) return 0;
 		return widths[c];
 	}
 
 	private int baselineWidth(int c) {
-		if (c == MIN_CHAR) return spaceWidth;
+		if (c == MIN_CHAR) return spaceWidth * scale;
 		if (c >= MAX_CHAR) return 0;
 		return baselines[c];
 	}
@@ -461,12 +1140,12 @@ public final class Ezo {
 		return c >= MAX_CHAR ? 0 : offsets[c];
 	}
 
-	// may only be called with valid characters
-	private boolean collapse(int prev, int next) {
+	// may only be called with valid characters, the next character's classes may be from a different style
+	private boolean collapse(int prev, int next, byte[] nextClasses) {
 		if (prev =='r' && next == 'n') return false; // special case: rn is too similar to m
 		if (prev =='_' && next == '_') return true;  // special case: join underscores
 		int prevClass = classes[prev];
-		int nextClass = classes[next];
+		int nextClass = nextClasses[next];
 		if (prevClass == -1 || nextClass == -1) return false; // no rules apply
 		if (prevClass <= 3) return false; // the previous character is small, so no collapse
 		if (prevClass == 10 && (nextClass <= 3 || nextClass >=9)) return true; // tall characters like f can accommodate all non-big (or ligature) characters
@@ -476,10 +1155,10 @@ public final class Ezo {
 		return pattern == (pattern & nextClass);
 	}
 
-	private boolean collapseItalic(int prev, int next) {
-		if (!italic) return false; // at present, non-italic fonts don't use this extra class
+	private boolean collapseItalic(int prev, int next, Ezo ezo) {
+		if (!italic || !ezo.italic) return false; // at present, non-italic fonts don't use this extra class
 		int prevClass = italics[prev];
-		int nextClass = italics[next];
+		int nextClass = ezo.italics[next];
 		if (prevClass == -1 || nextClass == -1) return false; // no rules apply
 		// bulge right/both + hollow left/both
 		// hollow right/both/oth + bulge left/both/oth
@@ -490,18 +1169,32 @@ public final class Ezo {
 	}
 
 	private int delta(int prev, int next) {
+		return delta(prev, this, next);
+	}
+
+	// kerns a character in this style against a following character in the specified style
+	private int delta(int prev, Ezo ezo, int next) {
 		if (prev == -1) return 0; // don't advance on first character
 		if (prev == MIN_CHAR) return 0; // don't advance further after a space
 		if (baselineWidth(prev) == 0) return 0; // don't advance after non-printable character
 		int delta = 1; // assume a standard space of 1 px
-		if (collapse(prev, next)) delta --;
-		if (collapseItalic(prev, next)) delta --;
+		if (collapse(prev, next, ezo.classes)) delta --;
+		if (collapseItalic(prev, next, ezo)) delta --;
 		// special cases here
-		return delta;
+		return delta * scale;
 	}
 
 	// inner classes
 
+	// holders of the base styles at each larger scale, so that glyphs are only enlarged for the scales that are used
+	private static final class Scale2 {
+		static final Ezo[] ezos = scaled(2);
+	}
+
+	private static final class Scale3 {
+		static final Ezo[] ezos = scaled(3);
+	}
+
 	/**
 	 * A plotter renders the pixels that comprise the Ezo glyphs. A plotter is
 	 * necessary to render an text using Ezo. Simple implementations will simply
@@ -521,6 +1214,134 @@ public final class Ezo {
 
 		void plot(int x, int y);
 
+		/**
+		 * Renders a horizontal run of pixels starting at the given coordinates
+		 * and extending to the right. Renderers supply the pixels of each glyph
+		 * row as runs via this method; the default implementation plots each
+		 * pixel of the run in turn, but plotters that can fill runs more
+		 * efficiently may override it.
+		 *
+		 * @param x the x coordinate of the left-most pixel
+		 * @param y the y coordinate
+		 * @param length the number of pixels in the run, always positive
+		 */
+
+		default void plotSpan(int x, int y, int length) {
+			for (int i = 0; i < length; i++) {
+				plot(x + i, y);
+			}
+		}
+
+		/**
+		 * Renders a horizontal run of background pixels starting at the given
+		 * coordinates and extending to the right. Renderers only supply
+		 * background pixels when text is rendered with a {@link Fill} other
+		 * than {@link Fill#NONE}; the default implementation does nothing,
+		 * leaving the background unchanged, but plotters that can distinguish
+		 * background from ink may override it.
+		 *
+		 * @param x the x coordinate of the left-most pixel
+		 * @param y the y coordinate
+		 * @param length the number of pixels in the run, always positive
+		 * @see Renderer#fill(Fill)
+		 */
+
+		default void plotBackgroundSpan(int x, int y, int length) { }
+
+	}
+
+	/**
+	 * The ways in which a renderer may fill the box behind the text it
+	 * renders. The box extends across the baseline from the ascent of the font
+	 * above it to the descent below it, and along the baseline over the
+	 * rendered width of the text, extended backwards to cover any glyph that
+	 * reaches behind the location at which the text starts.
+	 *
+	 * @see Renderer#fill(Fill)
+	 */
+
+	public enum Fill {
+
+		/**
+		 * Only the pixels of the text are plotted.
+		 */
+
+		NONE,
+
+		/**
+		 * The pixels of the text are plotted as ink, and every other pixel
+		 * in the box is plotted as background.
+		 */
+
+		BACKGROUND,
+
+		/**
+		 * The pixels of the text are plotted as background, and every other
+		 * pixel in the box is plotted as ink.
+		 */
+
+		INVERSE;
+
+	}
+
+	/**
+	 * <p>
+	 * A plotter that is informed of the glyph to which plotted pixels belong.
+	 * Before the pixels of each glyph are plotted, the renderer reports the
+	 * character being rendered and the position of the glyph; after the last
+	 * of its pixels is plotted, the end of the glyph is reported. This allows
+	 * a plotter to change its state, such as the colour in which it plots,
+	 * once per character instead of once per pixel.
+	 *
+	 * <p>
+	 * Glyphs are reported for every printable character, including those with
+	 * no ink, such as spaces. Pixels of underlines do not belong to any glyph
+	 * and are plotted outside of any begin and end pair.
+	 *
+	 * <p>
+	 * When a renderer fills the box behind its text, the pixels of overlapping
+	 * glyphs and their background are plotted together once no subsequent
+	 * glyph can reach them. Each glyph is then reported, with its position,
+	 * as it is laid out in the box, and its pixels are plotted after its end
+	 * is reported.
+	 */
+
+	public interface GlyphPlotter extends Plotter {
+
+		/**
+		 * Reports that the pixels of a glyph are about to be plotted.
+		 *
+		 * @param index
+		 *            the index of the character amongst those supplied to the
+		 *            renderer by a single call, or to a single writer
+		 * @param c
+		 *            the character
+		 * @param x
+		 *            the x coordinate of the glyph's left-hand-side on the
+		 *            baseline
+		 * @param y
+		 *            the y coordinate of the glyph's left-hand-side on the
+		 *            baseline
+		 */
+
+		void beginGlyph(int index, int c, int x, int y);
+
+		/**
+		 * Reports that every pixel of the most recently begun glyph has been
+		 * plotted, or, if the box behind the text is filled, laid out. The
+		 * default implementation does nothing.
+		 */
+
+		default void endGlyph() { }
+
+	}
+
+	// a plotter that is informed of the positions along the baseline behind which no further pixels will be plotted
+	interface SettlingPlotter extends Plotter {
+
+		// the position is the distance along the baseline from the start of the text
+		void settled(int position);
+
 	}
 
 	/**
@@ -537,17 +1358,48 @@ public final class Ezo {
 	 * created {@link Renderer} is initialized to (0,0).
 	 *
 	 * <p>
+	 * A renderer may be rotated clockwise in quarter turns using
+	 * {@link #rotate(int)}. The location of a rotated renderer advances along
+	 * the rotated baseline, and any underline follows it. Glyphs are always
+	 * supplied to the plotter as horizontal runs of pixels in the coordinates
+	 * of the target, whatever the rotation.
+	 *
+	 * <p>
+	 * If the plotter is a {@link GlyphPlotter}, the start and end of each glyph
+	 * is reported to it.
+	 *
+	 * <p>
+	 * A renderer may fill the box behind the text it renders, as specified by
+	 * {@link #fill(Fill)}. Each pixel of the box is then plotted exactly once,
+	 * either as ink or as background, with ink and background plotted together
+	 * as horizontal runs once no subsequent glyph can reach them. This avoids
+	 * the need to fill the background before rendering the text over it.
+	 *
+	 * <p>
 	 * Multi-threaded use of this class requires external synchronization
 	 */
 
 	public final class Renderer {
 
 		private final Plotter plotter;
+		private final GlyphPlotter glyphs; // the plotter, if it is informed of glyphs, otherwise null
+		private final SettlingPlotter settling; // the plotter, if it is informed of settled positions, otherwise null
+		private final boolean dry; // true if the renderer only measures
 		private int x = 0;
 		private int y = 0;
-
-		Renderer(Plotter plotter) {
+		private int turns = 0;
+		private Fill fill = Fill.NONE;
+		private int dirtyMinX = Integer.MAX_VALUE; // the bounds of the most recently rendered pixels
+		private int dirtyMinY = Integer.MAX_VALUE;
+		private int dirtyMaxX = Integer.MIN_VALUE;
+		private int dirtyMaxY = Integer.MIN_VALUE;
+		private Text plain = null; // reused for text that is neither underlined nor filled, created lazily
+
+		Renderer(Plotter plotter, boolean dry) {
 			this.plotter = plotter;
+			this.glyphs = plotter instanceof GlyphPlotter ? (GlyphPlotter) plotter : null;
+			this.settling = plotter instanceof SettlingPlotter ? (SettlingPlotter) plotter : null;
+			this.dry = dry;
 		}
 
 		/**
@@ -583,6 +1435,65 @@ public final class Ezo {
 			return this;
 		}
 
+		/**
+		 * <p>
+		 * Specifies the clockwise rotation applied to subsequently rendered
+		 * characters. The rotation is made about the location of the renderer,
+		 * so that at 90 degrees text reads downwards, and at 180 degrees text
+		 * is upside-down and reads to the left.
+		 *
+		 * <p>
+		 * Calls to this method can be chained.
+		 *
+		 * @param degrees
+		 *            a multiple of 90, possibly negative
+		 * @return this renderer
+		 * @see #rotation()
+		 */
+
+		public Renderer rotate(int degrees) {
+			if (degrees % 90 != 0) throw new IllegalArgumentException("degrees not a multiple of 90");
+			turns = (degrees / 90) & 3;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Specifies how the box behind subsequently rendered text is filled.
+		 * With a fill of {@link Fill#BACKGROUND} or {@link Fill#INVERSE},
+		 * background pixels are supplied to the plotter via
+		 * {@link Plotter#plotBackgroundSpan(int, int, int)}, and any gaps in
+		 * an underline are filled in the same way as the gaps between glyphs.
+		 * Since the pixels of overlapping glyphs are combined before they are
+		 * plotted, a {@link GlyphPlotter} is informed of each glyph as it is
+		 * laid out in the box, before its pixels are plotted.
+		 *
+		 * <p>
+		 * Calls to this method can be chained.
+		 *
+		 * @param fill
+		 *            how the box behind the text is filled
+		 * @return this renderer
+		 * @see #fill()
+		 */
+
+		public Renderer fill(Fill fill) {
+			if (fill == null) throw new IllegalArgumentException("null fill");
+			this.fill = fill;
+			return this;
+		}
+
+		/**
+		 * How the box behind rendered text is filled.
+		 *
+		 * @return the fill, {@link Fill#NONE} by default
+		 * @see #fill(Fill)
+		 */
+
+		public Fill fill() {
+			return fill;
+		}
+
 		/**
 		 * The x coordinate of the next character's left-hand-side.
 		 *
@@ -603,6 +1514,30 @@ public final class Ezo {
 			return y;
 		}
 
+		/**
+		 * The clockwise rotation applied to rendered characters.
+		 *
+		 * @return the rotation in degrees, one of 0, 90, 180 or 270
+		 * @see #rotate(int)
+		 */
+
+		public int rotation() {
+			return turns * 90;
+		}
+
+		/**
+		 * The bounds of every pixel plotted by the most recent call to render
+		 * characters, or by the most recently closed writer. The bounds are
+		 * exact, and are empty if no pixels were plotted or nothing has been
+		 * rendered.
+		 *
+		 * @return the bounds of the most recently rendered pixels
+		 */
+
+		public Bounds dirtyBounds() {
+			return Bounds.of(dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY);
+		}
+
 		/**
 		 * Renders the supplied string. Non-printable and unsupported characters
 		 * are omitted and do not advance the location of the renderer.
@@ -614,18 +1549,11 @@ public final class Ezo {
 
 		public int renderString(String str) {
 			if (str == null) throw new IllegalArgumentException("null str");
-			OfInt cs = str.chars().iterator();
-			int oldX = x;
-			int prev = -1;
-			BitSet line = underline ? new BitSet() : null;
-			while (cs.hasNext()) {
-				int next = cs.nextInt();
-				renderImpl(prev, next, line, oldX - 1);
-				prev = next;
+			Text text = text();
+			for (int i = 0; i < str.length(); i++) {
+				text.render(str.charAt(i));
 			}
-			if (line != null && prev != -1) renderLine(line, oldX, x - baselineWidth(prev) + pixelWidth(prev) - offset(prev));
-			return x - oldX;
-
+			return text.finish();
 		}
 
 		/**
@@ -645,40 +1573,510 @@ public final class Ezo {
 
 		public int renderChar(int c) {
 			if (c < 0) throw new IllegalArgumentException();
-			int oldX = x;
-			BitSet line = underline ? new BitSet() : null;
-			renderImpl(-1, c, line, oldX - 1);
-			if (line != null) renderLine(line, oldX, pixelWidth(c) - offset(c));
-			return x - oldX;
-		}
-
-		private void renderImpl(int prev, int next, BitSet line, int lineOffset) {
-			int w = pixelWidth(next);
-			if (w <= 0) return;
-			x += delta(prev, next);
-			long bits = bitmaps[next];
-			int b = 0;
-			int o = offset(next);
-			x -= o;
-			for (int py = y - ASCENT; py < y + DESCENT; py++) {
-				b = (b + 7) & ~7;
-				for (int px = x; px < x + w; px++, b++) {
-					boolean bit = (bits << b) < 0L;
-					if (!bit) continue;
-					plotter.plot(px, py);
-					if (line == null || py != y + 1) continue;
-					line.set(px - lineOffset);
+			Text text = text();
+			text.render(c);
+			return text.finish();
+		}
+
+		/**
+		 * <p>
+		 * Renders the supplied integer as laid out by the number style. The
+		 * value is counted in units of the style's last decimal place, so that
+		 * a value of 12345 is rendered as "123.45" in a style with two decimal
+		 * places. The digits are rendered directly from the value without
+		 * formatting it as a string.
+		 *
+		 * <p>
+		 * Unless the text is underlined or its box is filled, rendering does
+		 * not allocate any objects.
+		 *
+		 * @param value
+		 *            the value to render
+		 * @param style
+		 *            the layout of the number
+		 * @return the number of pixels advanced by the renderer
+		 * @see Ezo#baselineWidthOfLong(long, NumberStyle)
+		 */
+
+		public int renderLong(long value, NumberStyle style) {
+			if (style == null) throw new IllegalArgumentException("null style");
+			Text text = text();
+			renderNumber(text, value > 0L ? -value : value, value < 0L, style);
+			return text.finish();
+		}
+
+		/**
+		 * <p>
+		 * Renders the supplied number as laid out by the number style. The
+		 * value is rounded to the style's decimal places as described by
+		 * {@link NumberStyle}, so that the digits rendered are those of
+		 * {@link String#format(String, Object...)}. Unless the value is not
+		 * finite or too large to be counted in a long, the digits are rendered
+		 * directly from the value without formatting it as a string; other
+		 * values are formatted as a string before they are rendered.
+		 *
+		 * <p>
+		 * As with {@link #renderLong(long, NumberStyle)}, rendering does not
+		 * allocate any objects unless the text is underlined or its box is
+		 * filled, provided that the style has no more than 15 decimal places
+		 * and the value is less than 2<sup>46</sup> units of its last decimal
+		 * place in magnitude. Other values are rounded using
+		 * {@link java.math.BigDecimal}.
+		 *
+		 * @param value
+		 *            the value to render
+		 * @param style
+		 *            the layout of the number
+		 * @return the number of pixels advanced by the renderer
+		 * @see Ezo#baselineWidthOfDouble(double, NumberStyle)
+		 */
+
+		public int renderDouble(double value, NumberStyle style) {
+			if (style == null) throw new IllegalArgumentException("null style");
+			Text text = text();
+			long negated = NumberStyle.negatedUnits(value, style.decimals());
+			if (negated > 0L) {
+				String str = style.format(value);
+				for (int i = 0; i < str.length(); i++) {
+					text.render(str.charAt(i));
+				}
+			} else {
+				renderNumber(text, negated, value < 0.0, style);
+			}
+			return text.finish();
+		}
+
+		/**
+		 * Creates a writer that renders the characters written to it as a
+		 * single string. Kerning and underlining are applied across successive
+		 * writes exactly as if the characters had been supplied in one call to
+		 * {@link #renderString(String)}, with the location of this renderer
+		 * advancing as characters are written. The underline is completed when
+		 * the writer is closed.
+		 *
+		 * @return a writer that renders text from its current location
+		 */
+
+		public RenderWriter writer() {
+			return new RenderWriter(new Text());
+		}
+
+		/**
+		 * <p>
+		 * Renders the supplied styled text in a single pass, starting at the
+		 * location of this renderer and with its rotation. Each segment of the
+		 * text is rendered in its own style, rather than the font that backs
+		 * this renderer. Characters are kerned across the boundaries between
+		 * segments and the underlines of consecutive underlined segments are
+		 * joined.
+		 *
+		 * <p>
+		 * Non-printable and unsupported characters are omitted and do not
+		 * advance the location of the renderer.
+		 *
+		 * @param text
+		 *            the styled text to be rendered
+		 * @return the number of pixels advanced by the renderer
+		 * @see StyledText#baselineWidth()
+		 */
+
+		public int renderStyled(StyledText text) {
+			if (text == null) throw new IllegalArgumentException("null text");
+			Text t = new Text(text.underlined, text.scale());
+			for (int i = 0; i < text.count; i++) {
+				t.style(text.styles[i]);
+				String str = text.strs[i];
+				for (int j = 0; j < str.length(); j++) {
+					t.render(str.charAt(j));
+				}
+			}
+			return t.finish();
+		}
+
+		// the text for a single rendering call, reusing one text if nothing is underlined or filled
+		private Text text() {
+			if (underline || fill != Fill.NONE) return new Text();
+			if (plain == null) {
+				plain = new Text();
+			} else {
+				plain.reset();
+			}
+			return plain;
+		}
+
+		// renders the digits of a negated magnitude from the most significant, with any sign and separators
+		private void renderNumber(Text text, long negated, boolean negative, NumberStyle style) {
+			char sign = style.sign(negated, negative);
+			if (sign != '\0') text.render(sign);
+			for (int place = style.digitCount(negated) - 1; place >= 0; place--) {
+				text.render('0' + NumberStyle.digit(negated, place));
+				if (style.separated(place)) text.render(style.separator(place));
+			}
+		}
+
+		// plots the runs of a glyph, with the top-left of its 8x8 box at the given coordinates
+		private void renderSpans(byte[] spans, int left, int top) {
+			for (int i = 0; i < spans.length; i += 3) {
+				plotter.plotSpan(left + spans[i], top + spans[i + 1], spans[i + 2]);
+			}
+		}
+
+		// renders a sequence of characters, kerning each against its predecessor
+		final class Text {
+
+			private final Line line; // null if no part of the text is underlined
+			private final Box box; // null if the box behind the text is not filled
+			private final int margin; // the distance behind the advance that no subsequent glyph can reach
+			private int minX = Integer.MAX_VALUE; // the bounds of the pixels plotted
+			private int minY = Integer.MAX_VALUE;
+			private int maxX = Integer.MIN_VALUE;
+			private int maxY = Integer.MIN_VALUE;
+			private Ezo ezo = null; // the style of subsequent characters
+			private Ezo prevEzo = Ezo.this; // the style of the previous character
+			private int prev = -1;
+			private int advance = 0;
+			private int index = 0; // the number of characters supplied
+
+			Text() {
+				this(underline, scale);
+				style(Ezo.this);
+			}
+
+			Text(boolean lined, int scale) {
+				line = lined ? new Line(this, x, y, scale) : null;
+				box = fill == Fill.NONE ? null : new Box(this, x, y, scale);
+				margin = 5 * scale;
+			}
+
+			// prepares text that is neither underlined nor filled to be rendered again
+			void reset() {
+				minX = Integer.MAX_VALUE;
+				minY = Integer.MAX_VALUE;
+				maxX = Integer.MIN_VALUE;
+				maxY = Integer.MIN_VALUE;
+				ezo = Ezo.this;
+				prevEzo = Ezo.this;
+				prev = -1;
+				advance = 0;
+				index = 0;
+			}
+
+			void style(Ezo ezo) {
+				if (line != null && ezo.underline != (this.ezo != null && this.ezo.underline)) {
+					line.settle(advance - margin);
+					if (ezo.underline) {
+						line.open(advance);
+					} else {
+						line.close(end());
+					}
+				}
+				this.ezo = ezo;
+			}
+
+			void render(int next) {
+				if (ezo.printable(next)) {
+					// no subsequent glyph can reach further back than this
+					if (line != null) line.settle(advance - margin);
+					if (box != null) box.settle(advance - margin);
+					if (settling != null) settling.settled(advance - margin);
+					int bx = BASE_X[turns];
+					int by = BASE_Y[turns];
+					// distance along the baseline to the left of the glyph
+					int left = prevEzo.left(prev, ezo, next);
+					int gx = x + bx * left + ezo.boxX[turns];
+					int gy = y + by * left + ezo.boxY[turns];
+					int extent = ezo.extents[turns][next];
+					if (glyphs != null) glyphs.beginGlyph(index, next, x + bx * left, y + by * left);
+					if (box != null) {
+						box.glyph(advance + left, ezo.pixelWidth(next), ezo.spans[0][next]);
+					} else if (extent != 0) {
+						dirty(gx + (extent >>> 24), gy + (extent >> 16 & 0xff), gx + (extent >> 8 & 0xff), gy + (extent & 0xff));
+						if (!dry) renderSpans(ezo.spans[turns][next], gx, gy);
+					}
+					if (glyphs != null) glyphs.endGlyph();
+					if (line != null) line.ink(advance + left, ezo.descents[next]);
+					int delta = prevEzo.advance(prev, ezo, next);
+					x += bx * delta;
+					y += by * delta;
+					advance += delta;
 				}
+				prev = next;
+				prevEzo = ezo;
+				index++;
+			}
+
+			// returns the total distance advanced along the baseline
+			int finish() {
+				if (line != null) {
+					if (ezo.underline) {
+						line.settle(advance - margin);
+						line.close(end());
+					}
+					line.finish();
+				}
+				if (box != null) box.finish();
+				dirtyMinX = minX;
+				dirtyMinY = minY;
+				dirtyMaxX = maxX;
+				dirtyMaxY = maxY;
+				return advance;
+			}
+
+			// extends the bounds of the plotted pixels
+			void dirty(int left, int top, int right, int bottom) {
+				if (left < minX) minX = left;
+				if (top < minY) minY = top;
+				if (right > maxX) maxX = right;
+				if (bottom > maxY) maxY = bottom;
 			}
-			x += o + baselineWidth(next);
+
+			// the distance to the end of the rendering of the previous character
+			private int end() {
+				return prev == -1 ? advance : advance + prevEzo.overhang(prev);
+			}
+
 		}
 
-		private void renderLine(BitSet line, int from, int to) {
-			int len = to - from;
-			for (int px = 1; px <= len; px++) {
-				boolean skip = line.get(px - 1) || line.get(px) || line.get(px + 1);
-				if (!skip) plotter.plot(px + from - 1, y + DESCENT - 1);
+		// plots an underline that avoids glyph ink on the same row, retaining only the state that may still affect it
+		private final class Line {
+
+			private final Text text; // the text being underlined
+			private final int fromX; // the x coordinate of the start of the line
+			private final int fromY; // the y coordinate of the start of the line
+			private final int dir;   // the quarter turns of rotation applied to the line
+			private final int scale; // the thickness of the line, and the least distance between it and any ink
+			private long ink = 0L; // the ink on the underline rows, by position along the line
+			private long on = 0L; // the completed ranges over which the line is drawn, by position along the line
+			private int base; // the position along the line that corresponds to the lowest bits of ink and on
+			private int settled = 0; // the position before which the underline has been determined
+			private int from = -1; // the start of an incomplete range over which the line is drawn, or -1
+			private int extent = 0; // the end of the last completed range
+			private int start = -1; // the start of an unplotted run of underline, or -1
+
+			Line(Text text, int fromX, int fromY, int scale) {
+				this.text = text;
+				this.scale = scale;
+				dir = turns;
+				// the underline fills the rows of the last scaled pixel of the descent
+				this.fromX = fromX - BASE_Y[dir] * (DESCENT - 1) * scale;
+				this.fromY = fromY + BASE_X[dir] * (DESCENT - 1) * scale;
+				// no glyph can reach further back than this
+				base = -4 * scale;
+			}
+
+			void ink(int left, int descent) {
+				ink |= (long) descent << (left - base);
+			}
+
+			void open(int at) {
+				from = at;
 			}
+
+			void close(int to) {
+				// positions beyond the window cannot be recorded until those before it are settled
+				if (to - base > 64) settle(to - 64 + scale);
+				for (int u = Math.max(from, settled); u < to; u++) {
+					on |= 1L << (u - base);
+				}
+				from = -1;
+				extent = Math.max(extent, to);
+			}
+
+			void settle(int to) {
+				for (int u = settled; u < to; u++) {
+					boolean skip = !lined(u) || inked(u - scale, u + scale);
+					if (skip) {
+						if (start == -1) continue;
+						plotRun(start, u);
+						start = -1;
+					} else if (start == -1) {
+						start = u;
+					}
+				}
+				if (to <= settled) return;
+				// a filled box, or a settling plotter, requires the underline to be supplied as it is settled
+				if ((text.box != null || settling != null) && start != -1) {
+					plotRun(start, to);
+					start = to;
+				}
+				settled = to;
+				int shift = settled - scale - base;
+				ink = shift < 64 ? ink >>> shift : 0L;
+				on = shift < 64 ? on >>> shift : 0L;
+				base = settled - scale;
+			}
+
+			void finish() {
+				settle(extent);
+				if (start != -1 && start < extent) plotRun(start, extent);
+			}
+
+			private boolean lined(int u) {
+				return from != -1 && u >= from || u - base < 64 && (on >>> (u - base) & 1L) != 0L;
+			}
+
+			// whether there is ink anywhere over [from, to]
+			private boolean inked(int from, int to) {
+				return from - base < 64 && (ink >>> (from - base) & -1L >>> (63 - to + from)) != 0L;
+			}
+
+			// plots the underline over [from, to)
+			private void plotRun(int from, int to) {
+				// runs that were split as the line settled may be empty
+				if (from == to) return;
+				if (text.box != null) {
+					text.box.line(from, to, scale);
+					return;
+				}
+				int bx = BASE_X[dir];
+				int by = BASE_Y[dir];
+				// opposite corners of the line, which extends across the baseline by its thickness
+				int x0 = fromX + bx * from;
+				int y0 = fromY + by * from;
+				int x1 = fromX + bx * (to - 1) - by * (scale - 1);
+				int y1 = fromY + by * (to - 1) + bx * (scale - 1);
+				int left = Math.min(x0, x1);
+				int top = Math.min(y0, y1);
+				int right = Math.max(x0, x1) + 1;
+				int bottom = Math.max(y0, y1) + 1;
+				text.dirty(left, top, right, bottom);
+				if (dry) return;
+				for (int py = top; py < bottom; py++) {
+					plotter.plotSpan(left, py, right - left);
+				}
+			}
+
+		}
+
+		// fills the box behind the text, plotting its ink and background together once no glyph can reach them
+		private final class Box {
+
+			private final Text text; // the text being rendered over the box
+			private final int fromX; // the x coordinate of the start of the text
+			private final int fromY; // the y coordinate of the start of the text
+			private final int dir;   // the quarter turns of rotation applied to the box
+			private final boolean inverse; // whether the ink of the text is plotted as background
+			private final int ascent; // the number of rows of the box above the baseline
+			private final long[] ink; // the ink on each row of the box, by position along the baseline
+			private int base; // the position along the baseline that corresponds to the lowest bits of ink
+			private int settled; // the position before which the box has been plotted
+			private int start = 0; // the start of the box along the baseline
+			private int end = 0; // the end of the box along the baseline
+
+			Box(Text text, int fromX, int fromY, int scale) {
+				this.text = text;
+				this.fromX = fromX;
+				this.fromY = fromY;
+				dir = turns;
+				inverse = fill == Fill.INVERSE;
+				ascent = ASCENT * scale;
+				ink = new long[(ASCENT + DESCENT) * scale];
+				// no glyph can reach further back than this
+				base = -4 * scale;
+				settled = base;
+			}
+
+			// records the runs of a glyph, its box starting at the given position
+			void glyph(int left, int width, byte[] spans) {
+				for (int i = 0; i < spans.length; i += 3) {
+					ink[spans[i + 1]] |= (-1L >>> (64 - spans[i + 2])) << (left + spans[i] - base);
+				}
+				start = Math.min(start, left);
+				end = Math.max(end, left + width);
+			}
+
+			// records the underline over [from, to), which fills the bottom rows of the box
+			void line(int from, int to, int thickness) {
+				start = Math.min(start, from);
+				end = Math.max(end, to);
+				while (true) {
+					// no glyph can reach behind the line, so the box may be settled to accommodate it
+					int limit = Math.min(to, base + 64);
+					long bits = (-1L >>> (64 - limit + from)) << (from - base);
+					for (int row = ink.length - thickness; row < ink.length; row++) {
+						ink[row] |= bits;
+					}
+					if (limit == to) return;
+					settle(limit);
+					from = limit;
+				}
+			}
+
+			void settle(int to) {
+				int from = Math.max(settled, start);
+				to = Math.min(to, end);
+				if (to <= settled) return;
+				if (from < to) plotBox(from, to);
+				int shift = to - base;
+				for (int row = 0; row < ink.length; row++) {
+					ink[row] = shift < 64 ? ink[row] >>> shift : 0L;
+				}
+				base = to;
+				settled = to;
+			}
+
+			void finish() {
+				settle(end);
+			}
+
+			// plots the box over [from, to) as runs on the rows of the target
+			private void plotBox(int from, int to) {
+				int bx = BASE_X[dir];
+				int by = BASE_Y[dir];
+				// opposite corners of the box
+				int x0 = fromX + bx * from + by * ascent;
+				int y0 = fromY + by * from - bx * ascent;
+				int x1 = fromX + bx * (to - 1) - by * (ink.length - ascent - 1);
+				int y1 = fromY + by * (to - 1) + bx * (ink.length - ascent - 1);
+				text.dirty(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1) + 1, Math.max(y0, y1) + 1);
+				if (dry) return;
+				if (bx != 0) {
+					// rows of the box lie along rows of the target
+					for (int row = 0; row < ink.length; row++) {
+						long bits = ink[row] >>> (from - base);
+						for (int u = from; u < to; ) {
+							boolean set = (bits & 1L) != 0L;
+							int n = Math.min(Long.numberOfTrailingZeros(set ? ~bits : bits), to - u);
+							plotRun(set, u, row, u + n - 1, row);
+							bits = n == 64 ? 0L : bits >>> n;
+							u += n;
+						}
+					}
+				} else {
+					// positions along the baseline lie along rows of the target
+					for (int u = from; u < to; u++) {
+						for (int row = 0; row < ink.length; ) {
+							boolean set = inked(row, u);
+							int r = row + 1;
+							while (r < ink.length && inked(r, u) == set) r++;
+							plotRun(set, u, row, u, r - 1);
+							row = r;
+						}
+					}
+				}
+			}
+
+			private boolean inked(int row, int u) {
+				int shift = u - base;
+				return shift < 64 && (ink[row] >>> shift & 1L) != 0L;
+			}
+
+			// plots the pixels between two points of the box that lie on the same row of the target
+			private void plotRun(boolean set, int u0, int row0, int u1, int row1) {
+				int bx = BASE_X[dir];
+				int by = BASE_Y[dir];
+				int x0 = fromX + bx * u0 - by * (row0 - ascent);
+				int x1 = fromX + bx * u1 - by * (row1 - ascent);
+				int y = fromY + by * u0 + bx * (row0 - ascent);
+				int left = Math.min(x0, x1);
+				int length = Math.abs(x1 - x0) + 1;
+				if (set != inverse) {
+					plotter.plotSpan(left, y, length);
+				} else {
+					plotter.plotBackgroundSpan(left, y, length);
+				}
+			}
+
 		}
 	}
 }
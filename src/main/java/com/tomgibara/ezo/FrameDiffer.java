@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+/**
+ * <p>
+ * Identifies the pixels that change between successive frames of a display.
+ * Two {@link Raster} instances are maintained: the current frame, which
+ * matches what is displayed, and the next frame, into which new content is
+ * rendered. Committing the next frame compares the two, 64 pixels at a time,
+ * reports the changes and makes the next frame current.
+ *
+ * <p>
+ * Changes may be reported either as horizontal spans of pixels, or as the
+ * tiles of a grid that contain at least one changed pixel. During reporting,
+ * {@link #currentFrame()} returns the newly committed frame so that the
+ * changed pixels can be read from it.
+ *
+ * <p>
+ * Multi-threaded use of this class requires external synchronization
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class FrameDiffer {
+
+	/**
+	 * Receives the spans of pixels that have changed between frames.
+	 */
+
+	@FunctionalInterface
+	public interface SpanListener {
+
+		/**
+		 * Reports a horizontal run of pixels that contains changes.
+		 *
+		 * @param x the x coordinate of the left-most pixel of the span
+		 * @param y the y coordinate of the span
+		 * @param length the number of pixels in the span
+		 */
+
+		void changed(int x, int y, int length);
+
+	}
+
+	/**
+	 * Receives the tiles that contain pixels that have changed between frames.
+	 */
+
+	@FunctionalInterface
+	public interface TileListener {
+
+		/**
+		 * Reports a tile that contains changes. Tiles on the right and bottom
+		 * edges of a frame may extend beyond it.
+		 *
+		 * @param column the index of the tile horizontally, from zero
+		 * @param row the index of the tile vertically, from zero
+		 */
+
+		void changed(int column, int row);
+
+	}
+
+	private final int width;
+	private final int height;
+	private Raster current;
+	private Raster next;
+
+	/**
+	 * Creates a frame differ for frames of the given size. The current frame
+	 * is initially clear.
+	 *
+	 * @param width
+	 *            the width of the frames in pixels
+	 * @param height
+	 *            the height of the frames in pixels
+	 */
+
+	public FrameDiffer(int width, int height) {
+		current = new Raster(width, height);
+		next = new Raster(width, height);
+		this.width = width;
+		this.height = height;
+	}
+
+	// accessors
+
+	/**
+	 * The width of the frames.
+	 *
+	 * @return the width in pixels
+	 */
+
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * The height of the frames.
+	 *
+	 * @return the height in pixels
+	 */
+
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * The most recently committed frame. This raster should not be modified.
+	 *
+	 * @return the current frame
+	 */
+
+	public Raster currentFrame() {
+		return current;
+	}
+
+	// methods
+
+	/**
+	 * Clears the next frame and returns it so that new content can be
+	 * rendered into it.
+	 *
+	 * @return the cleared raster for the next frame
+	 */
+
+	public Raster nextFrame() {
+		next.clear();
+		return next;
+	}
+
+	/**
+	 * Commits the next frame, reporting every maximal run of changed pixels
+	 * in each row. Runs that are separated by no more than <code>gap</code>
+	 * unchanged pixels are reported as a single span, which may reduce the
+	 * cost of updating displays that incur an overhead per span.
+	 *
+	 * @param gap
+	 *            the number of unchanged pixels that may be included within a
+	 *            span, zero for spans that contain only changed pixels
+	 * @param listener
+	 *            receives the spans of changed pixels, row by row
+	 * @return the number of spans reported
+	 */
+
+	public int commitSpans(int gap, SpanListener listener) {
+		if (gap < 0) throw new IllegalArgumentException("negative gap");
+		if (listener == null) throw new IllegalArgumentException("null listener");
+		swap();
+		long[] a = current.words;
+		long[] b = next.words;
+		int stride = current.stride;
+		int count = 0;
+		for (int y = 0, row = 0; y < height; y++, row += stride) {
+			int start = -1; // the start of the pending span
+			int end = -1; // the end of the pending span
+			for (int i = 0; i < stride; i++) {
+				long diff = a[row + i] ^ b[row + i];
+				int base = i << 6;
+				while (diff != 0L) {
+					int lead = Long.numberOfLeadingZeros(diff);
+					int ones = Long.numberOfLeadingZeros(~(diff << lead));
+					int s = base + lead;
+					if (start != -1 && s - end <= gap) {
+						end = s + ones;
+					} else {
+						if (start != -1) {
+							listener.changed(start, y, end - start);
+							count++;
+						}
+						start = s;
+						end = s + ones;
+					}
+					diff = lead + ones == 64 ? 0L : diff & (-1L >>> (lead + ones));
+				}
+			}
+			if (start != -1) {
+				listener.changed(start, y, end - start);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Commits the next frame, reporting every tile that contains a changed
+	 * pixel. The frame is divided into a grid of tiles of the given size,
+	 * starting at the top-left corner, and tiles are reported row by row.
+	 *
+	 * @param tileWidth
+	 *            the width of each tile in pixels
+	 * @param tileHeight
+	 *            the height of each tile in pixels
+	 * @param listener
+	 *            receives the changed tiles
+	 * @return the number of tiles reported
+	 */
+
+	public int commitTiles(int tileWidth, int tileHeight, TileListener listener) {
+		if (tileWidth < 1) throw new IllegalArgumentException("non-positive tileWidth");
+		if (tileHeight < 1) throw new IllegalArgumentException("non-positive tileHeight");
+		if (listener == null) throw new IllegalArgumentException("null listener");
+		swap();
+		long[] a = current.words;
+		long[] b = next.words;
+		int stride = current.stride;
+		// the changes within a row of tiles
+		long[] diffs = new long[stride];
+		int count = 0;
+		for (int ty = 0, top = 0; top < height; ty++, top += tileHeight) {
+			boolean changed = false;
+			for (int y = top, bottom = Math.min(top + tileHeight, height); y < bottom; y++) {
+				int row = y * stride;
+				for (int i = 0; i < stride; i++) {
+					long diff = a[row + i] ^ b[row + i];
+					diffs[i] = y == top ? diff : diffs[i] | diff;
+					changed |= diff != 0L;
+				}
+			}
+			if (!changed) continue;
+			for (int tx = 0, left = 0; left < width; tx++, left += tileWidth) {
+				if (anySet(diffs, left, Math.min(left + tileWidth, width))) {
+					listener.changed(tx, ty);
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	// private helper methods
+
+	private void swap() {
+		Raster tmp = current;
+		current = next;
+		next = tmp;
+	}
+
+	// whether any bits are set in the range [from, to)
+	private static boolean anySet(long[] words, int from, int to) {
+		int i = from >> 6;
+		int j = (to - 1) >> 6;
+		long first = -1L >>> from;
+		long last = -1L << (63 - ((to - 1) & 63));
+		if (i == j) return (words[i] & first & last) != 0L;
+		if ((words[i] & first) != 0L) return true;
+		for (int k = i + 1; k < j; k++) {
+			if (words[k] != 0L) return true;
+		}
+		return (words[j] & last) != 0L;
+	}
+
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.nio.CharBuffer;
+
+import com.tomgibara.ezo.Ezo.GlyphPlotter;
+import com.tomgibara.ezo.Ezo.Plotter;
+
+/**
+ * <p>
+ * Renders characters in an {@link Ezo} font into a grid of fixed-size cells,
+ * as on a character terminal. Instances of this class are obtained from the
+ * {@link Ezo#gridRenderer(Plotter)} method of {@link Ezo}.
+ *
+ * <p>
+ * Every cell is as wide as the widest ink of any glyph in the font plus a gap of one
+ * scaled pixel, and as tall as the ascent and descent of the font combined.
+ * The ink of each glyph is centred horizontally within its cell and no kerning is
+ * applied, so the position of any cell is computed directly from its column
+ * and row without measuring any text. Every character occupies a cell;
+ * non-printable and unsupported characters leave their cells blank.
+ *
+ * <p>
+ * If the font is underlined, each rendered row is underlined across the full
+ * width of its cells, with gaps wherever the line would touch a descender.
+ *
+ * <p>
+ * If the plotter is a {@link GlyphPlotter}, it is informed of each glyph that
+ * is rendered, with its column in the row as the glyph's index.
+ *
+ * <p>
+ * Multi-threaded use of this class requires external synchronization
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class GridRenderer {
+
+	// fields
+
+	private final Ezo ezo;
+	private final Plotter plotter;
+	private final GlyphPlotter glyphs; // the plotter, if it is informed of glyphs, otherwise null
+	private final int scale;
+	private final int cellWidth;
+	private final int cellHeight;
+	private final int[] lefts; // the column at which each printable glyph starts within its cell
+	private final long[] blocks; // the underline positions blocked by each glyph's ink, offset by the scale
+	private int x = 0; // the location of the top-left of the grid
+	private int y = 0;
+
+	GridRenderer(Ezo ezo, Plotter plotter) {
+		this.ezo = ezo;
+		this.plotter = plotter;
+		glyphs = plotter instanceof GlyphPlotter ? (GlyphPlotter) plotter : null;
+		scale = ezo.scale();
+		int max = 0;
+		for (int c = 0; c < 128; c++) {
+			if (ezo.printable(c)) max = Math.max(max, inkWidth(ezo.extent(c)));
+		}
+		cellWidth = max + scale;
+		cellHeight = ezo.ascent() + ezo.descent();
+		lefts = new int[128];
+		blocks = new long[128];
+		for (int c = 0; c < 128; c++) {
+			if (!ezo.printable(c)) continue;
+			int extent = ezo.extent(c);
+			if (extent == 0) continue;
+			// the ink, rather than the glyph, is centred since italic glyphs may begin with empty columns
+			int left = (cellWidth - inkWidth(extent)) / 2 - (extent >>> 24);
+			int descent = ezo.underlineInk(c);
+			long ink = left < 0 ? descent >>> -left : (long) descent << left;
+			// the underline may not approach within the scale of any ink
+			long block = 0L;
+			for (int d = 0; d <= 2 * scale; d++) {
+				block |= ink << d;
+			}
+			lefts[c] = left;
+			blocks[c] = block;
+		}
+	}
+
+	// accessors
+
+	/**
+	 * The Ezo font that backs this renderer.
+	 *
+	 * @return the ezo instance from which this renderer was created
+	 */
+
+	public Ezo ezo() {
+		return ezo;
+	}
+
+	/**
+	 * The width of every cell in the grid.
+	 *
+	 * @return the cell width in pixels
+	 */
+
+	public int cellWidth() {
+		return cellWidth;
+	}
+
+	/**
+	 * The height of every cell in the grid, which is the sum of the ascent and
+	 * descent of the font.
+	 *
+	 * @return the cell height in pixels
+	 */
+
+	public int cellHeight() {
+		return cellHeight;
+	}
+
+	/**
+	 * <p>
+	 * Specifies the location of the grid. The <code>x</code> and
+	 * <code>y</code> coordinates give the top-left corner of the cell in the
+	 * first column of the first row. There is no prohibition on negative
+	 * coordinates.
+	 *
+	 * <p>
+	 * Calls to this method can be chained.
+	 *
+	 * @param x
+	 *            the x coordinate of the grid
+	 * @param y
+	 *            the y coordinate of the grid
+	 * @return this renderer
+	 */
+
+	public GridRenderer locate(int x, int y) {
+		this.x = x;
+		this.y = y;
+		return this;
+	}
+
+	// methods
+
+	/**
+	 * The x coordinate of the left-hand side of the cells in a column.
+	 *
+	 * @param column
+	 *            a column of the grid
+	 * @return the x coordinate of the column
+	 */
+
+	public int columnX(int column) {
+		return x + column * cellWidth;
+	}
+
+	/**
+	 * The y coordinate of the top of the cells in a row.
+	 *
+	 * @param row
+	 *            a row of the grid
+	 * @return the y coordinate of the row
+	 */
+
+	public int rowY(int row) {
+		return y + row * cellHeight;
+	}
+
+	/**
+	 * The column of the grid that contains an x coordinate.
+	 *
+	 * @param x
+	 *            any x coordinate
+	 * @return the column containing the coordinate, negative if it precedes
+	 *         the grid
+	 */
+
+	public int columnAt(int x) {
+		return Math.floorDiv(x - this.x, cellWidth);
+	}
+
+	/**
+	 * The row of the grid that contains a y coordinate.
+	 *
+	 * @param y
+	 *            any y coordinate
+	 * @return the row containing the coordinate, negative if it precedes the
+	 *         grid
+	 */
+
+	public int rowAt(int y) {
+		return Math.floorDiv(y - this.y, cellHeight);
+	}
+
+	/**
+	 * <p>
+	 * Renders a single character into a cell of the grid. The character is
+	 * underlined across the width of its cell if the font is underlined.
+	 *
+	 * <p>
+	 * Calls to this method can be chained.
+	 *
+	 * @param column
+	 *            the column of the cell
+	 * @param row
+	 *            the row of the cell
+	 * @param c
+	 *            the character to render
+	 * @return this renderer
+	 */
+
+	public GridRenderer renderChar(int column, int row, char c) {
+		int left = columnX(column);
+		int top = rowY(row);
+		renderCell(column, c, left, top);
+		if (ezo.isUnderlined()) {
+			// a lone cell has no neighbours whose ink can block its underline
+			int y = top + cellHeight - scale;
+			int start = underlineCell(block(c) >>> scale & cellMask(), left, y, -1);
+			if (start != -1) plotRun(start, left + cellWidth, y);
+		}
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Renders a sequence of characters into consecutive cells of a row,
+	 * starting at the specified column.
+	 *
+	 * <p>
+	 * Calls to this method can be chained.
+	 *
+	 * @param column
+	 *            the column of the cell for the first character
+	 * @param row
+	 *            the row of the cells
+	 * @param chars
+	 *            the characters to render
+	 * @return this renderer
+	 */
+
+	public GridRenderer renderRow(int column, int row, CharSequence chars) {
+		if (chars == null) throw new IllegalArgumentException("null chars");
+		int length = chars.length();
+		int left = columnX(column);
+		int top = rowY(row);
+		for (int i = 0, cx = left; i < length; i++, cx += cellWidth) {
+			renderCell(column + i, chars.charAt(i), cx, top);
+		}
+		if (ezo.isUnderlined()) underline(chars, left, top + cellHeight - scale);
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Renders rows of characters into the grid, starting at the first column
+	 * of the first row. Rows may differ in length.
+	 *
+	 * <p>
+	 * Calls to this method can be chained.
+	 *
+	 * @param rows
+	 *            the characters of each row
+	 * @return this renderer
+	 */
+
+	public GridRenderer renderGrid(char[][] rows) {
+		if (rows == null) throw new IllegalArgumentException("null rows");
+		for (int row = 0; row < rows.length; row++) {
+			if (rows[row] == null) throw new IllegalArgumentException("null row");
+			renderRow(0, row, CharBuffer.wrap(rows[row]));
+		}
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Renders rows of characters into the grid, starting at the first column
+	 * of the first row. Rows may differ in length.
+	 *
+	 * <p>
+	 * Calls to this method can be chained.
+	 *
+	 * @param rows
+	 *            the characters of each row
+	 * @return this renderer
+	 */
+
+	public GridRenderer renderGrid(CharSequence... rows) {
+		if (rows == null) throw new IllegalArgumentException("null rows");
+		for (int row = 0; row < rows.length; row++) {
+			if (rows[row] == null) throw new IllegalArgumentException("null row");
+			renderRow(0, row, rows[row]);
+		}
+		return this;
+	}
+
+	// private helper methods
+
+	// underlines the cells of the characters, leaving gaps around descenders
+	private void underline(CharSequence chars, int left, int top) {
+		int length = chars.length();
+		long mask = cellMask();
+		int start = -1; // the start of an unplotted run of underline, or -1
+		long prev = 0L;
+		long curr = length == 0 ? 0L : block(chars.charAt(0));
+		for (int i = 0, cx = left; i < length; i++, cx += cellWidth) {
+			long next = i + 1 == length ? 0L : block(chars.charAt(i + 1));
+			// the positions in this cell blocked by ink in this cell and its neighbours
+			long blocked = (curr >>> scale | prev >>> (cellWidth + scale) | next << (cellWidth - scale)) & mask;
+			start = underlineCell(blocked, cx, top, start);
+			prev = curr;
+			curr = next;
+		}
+		if (start != -1) plotRun(start, left + length * cellWidth, top);
+	}
+
+	// plots the underline of a cell up to its blocked positions, returning the start of any run left unplotted
+	private int underlineCell(long blocked, int cx, int top, int start) {
+		for (int p = 0; p < cellWidth; p++) {
+			if ((blocked >>> p & 1L) != 0L) {
+				if (start == -1) continue;
+				plotRun(start, cx + p, top);
+				start = -1;
+			} else if (start == -1) {
+				start = cx + p;
+			}
+		}
+		return start;
+	}
+
+	// blits the precomputed spans of a character's glyph into the cell at cx
+	private void renderCell(int column, char c, int cx, int top) {
+		if (!ezo.printable(c) || ezo.extent(c) == 0) return;
+		int gx = cx + lefts[c];
+		if (glyphs != null) glyphs.beginGlyph(column, c, gx, top + ezo.ascent());
+		byte[] spans = ezo.spans(c);
+		for (int j = 0; j < spans.length; j += 3) {
+			plotter.plotSpan(gx + spans[j], top + spans[j + 1], spans[j + 2]);
+		}
+		if (glyphs != null) glyphs.endGlyph();
+	}
+
+	// the positions across a cell
+	private long cellMask() {
+		return -1L >>> (64 - cellWidth);
+	}
+
+	private static int inkWidth(int extent) {
+		return (extent >> 8 & 0xff) - (extent >>> 24);
+	}
+
+	private long block(char c) {
+		return c < blocks.length ? blocks[c] : 0L;
+	}
+
+	// plots the underline over [from, to)
+	private void plotRun(int from, int to, int top) {
+		for (int i = 0; i < scale; i++) {
+			plotter.plotSpan(from, top + i, to - from);
+		}
+	}
+
+}
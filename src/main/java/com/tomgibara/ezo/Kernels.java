@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+// the loops over long arrays that dominate bulk measurement and pixel expansion
+// this implementation is scalar; on newer JDKs a multi-release jar may supply a subclass that uses SIMD instructions
+class Kernels {
+
+	// the kernels used by the library, as supplied by the factory for the running JDK
+	static final Kernels PREFERRED = KernelsFactory.create();
+
+	// whether every character in [from, to) is less than the limit
+	boolean below(char[] chars, int from, int to, int limit) {
+		for (int i = from; i < to; i++) {
+			if (chars[i] >= limit) return false;
+		}
+		return true;
+	}
+
+	// sums the table entries for each character in [from, to) paired with its predecessor, from must be positive
+	// every character must be less than 128 and the table indexed by the previous character shifted seven bits
+	int sumPairs(int[] pairs, char[] chars, int from, int to) {
+		int sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += pairs[chars[i - 1] << 7 | chars[i]];
+		}
+		return sum;
+	}
+
+	// expands count bits, starting at the given bit of the indexed word, into ink for set bits and paper for clear bits
+	void expand(long[] words, int index, int bit, int count, int ink, int paper, int[] pixels, int offset) {
+		for (int i = 0; i < count; i++, bit++) {
+			pixels[offset + i] = (words[index + (bit >> 6)] << bit) < 0L ? ink : paper;
+		}
+	}
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.tomgibara.ezo.Ezo.Plotter;
+
+/**
+ * <p>
+ * A rectangle of pixels stored in a memory-mapped file that can be used as
+ * the target of an Ezo {@link Ezo.Renderer}. Pixels are written directly into
+ * the mapped memory, so canvases may be much larger than the heap, and are
+ * written back to the file by the operating system.
+ *
+ * <p>
+ * Pixels are stored row by row, each row starting <code>stride</code> bytes
+ * after the previous one, in one of two layouts: packed with eight pixels to
+ * a byte (the left-most pixel in the most significant bit, as in the PBM
+ * format) or with one byte per pixel. Plotting a pixel sets its bit, or
+ * stores the ink value in its byte; plotting a background pixel clears its
+ * bit, or stores zero in its byte. Pixels plotted outside the bounds of the
+ * canvas are ignored.
+ *
+ * <p>
+ * The pixel data may start at any position in the file, allowing for a
+ * header, and regions larger than can be addressed by a single mapping are
+ * split across multiple mappings. Since the pixels can be mapped from any file
+ * supported by {@link FileChannel}, a canvas may also be used to render to a
+ * device such as a framebuffer.
+ *
+ * <p>
+ * Multi-threaded use of this class requires external synchronization
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class MappedCanvas implements Plotter {
+
+	// statics
+
+	private static final int MAX_MAPPING = 1 << 30; // the maximum size of a mapping, bar a single row
+
+	/**
+	 * The arrangement of pixels within the bytes of a row.
+	 */
+
+	public enum Layout {
+
+		/**
+		 * Eight pixels to a byte, with the left-most pixel in the most
+		 * significant bit.
+		 */
+
+		PACKED,
+
+		/**
+		 * One pixel to a byte.
+		 */
+
+		BYTE;
+
+		int minimumStride(int width) {
+			return this == PACKED ? (width + 7) >> 3 : width;
+		}
+	}
+
+	/**
+	 * Maps a canvas in which consecutive rows are contiguous.
+	 *
+	 * @param channel
+	 *            a channel open for reading and writing
+	 * @param position
+	 *            the position within the file at which the pixel data starts
+	 * @param layout
+	 *            the arrangement of pixels within each row
+	 * @param width
+	 *            the width of the canvas in pixels
+	 * @param height
+	 *            the height of the canvas in pixels
+	 * @return the canvas
+	 * @throws IOException
+	 *             if the file could not be mapped
+	 */
+
+	public static MappedCanvas map(FileChannel channel, long position, Layout layout, int width, int height) throws IOException {
+		if (layout == null) throw new IllegalArgumentException("null layout");
+		if (width < 0) throw new IllegalArgumentException("negative width");
+		return map(channel, position, layout, width, height, layout.minimumStride(width));
+	}
+
+	/**
+	 * Maps a canvas with a specified distance between the starts of
+	 * consecutive rows. The file is extended if it is too small to contain
+	 * the canvas.
+	 *
+	 * @param channel
+	 *            a channel open for reading and writing
+	 * @param position
+	 *            the position within the file at which the pixel data starts
+	 * @param layout
+	 *            the arrangement of pixels within each row
+	 * @param width
+	 *            the width of the canvas in pixels
+	 * @param height
+	 *            the height of the canvas in pixels
+	 * @param stride
+	 *            the number of bytes from the start of one row to the start of
+	 *            the next
+	 * @return the canvas
+	 * @throws IOException
+	 *             if the file could not be mapped
+	 */
+
+	public static MappedCanvas map(FileChannel channel, long position, Layout layout, int width, int height, int stride) throws IOException {
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		if (position < 0L) throw new IllegalArgumentException("negative position");
+		if (layout == null) throw new IllegalArgumentException("null layout");
+		if (width < 0) throw new IllegalArgumentException("negative width");
+		if (height < 0) throw new IllegalArgumentException("negative height");
+		if (stride < layout.minimumStride(width)) throw new IllegalArgumentException("stride too small");
+		int rowsPerMapping = stride == 0 ? Math.max(height, 1) : Math.max(MAX_MAPPING / stride, 1);
+		int count = (height + rowsPerMapping - 1) / rowsPerMapping;
+		MappedByteBuffer[] mappings = new MappedByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			int rows = Math.min(rowsPerMapping, height - i * rowsPerMapping);
+			long start = position + (long) i * rowsPerMapping * stride;
+			mappings[i] = channel.map(MapMode.READ_WRITE, start, (long) rows * stride);
+		}
+		return new MappedCanvas(mappings, rowsPerMapping, layout, width, height, stride);
+	}
+
+	// fields
+
+	private final MappedByteBuffer[] mappings;
+	private final int rowsPerMapping;
+	private final Layout layout;
+	private final int width;
+	private final int height;
+	private final int stride;
+	private byte ink = (byte) 0xff;
+
+	// constructor
+
+	private MappedCanvas(MappedByteBuffer[] mappings, int rowsPerMapping, Layout layout, int width, int height, int stride) {
+		this.mappings = mappings;
+		this.rowsPerMapping = rowsPerMapping;
+		this.layout = layout;
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+	}
+
+	// accessors
+
+	/**
+	 * The arrangement of pixels within the bytes of each row.
+	 *
+	 * @return the layout of the canvas
+	 */
+
+	public Layout layout() {
+		return layout;
+	}
+
+	/**
+	 * The width of the canvas.
+	 *
+	 * @return the width in pixels
+	 */
+
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * The height of the canvas.
+	 *
+	 * @return the height in pixels
+	 */
+
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * The distance between the starts of consecutive rows.
+	 *
+	 * @return the stride in bytes
+	 */
+
+	public int stride() {
+		return stride;
+	}
+
+	/**
+	 * <p>
+	 * Specifies the value stored for each plotted pixel in a canvas with one
+	 * byte per pixel. The default ink is 255. The ink has no effect on packed
+	 * canvases.
+	 *
+	 * <p>
+	 * Calls to this method can be chained.
+	 *
+	 * @param ink
+	 *            the value of plotted pixels, from 0 to 255 inclusive
+	 * @return this canvas
+	 */
+
+	public MappedCanvas ink(int ink) {
+		if (ink < 0 || ink > 255) throw new IllegalArgumentException("invalid ink");
+		this.ink = (byte) ink;
+		return this;
+	}
+
+	/**
+	 * The value stored for each plotted pixel in a canvas with one byte per
+	 * pixel.
+	 *
+	 * @return the ink, from 0 to 255 inclusive
+	 */
+
+	public int ink() {
+		return ink & 0xff;
+	}
+
+	// methods
+
+	/**
+	 * Whether the pixel at the given coordinates is set; for a canvas with one
+	 * byte per pixel, this is whether the pixel is non-zero. Pixels outside
+	 * the bounds of the canvas are reported as clear.
+	 *
+	 * @param x
+	 *            the x coordinate
+	 * @param y
+	 *            the y coordinate
+	 * @return true if the pixel is set, false otherwise
+	 */
+
+	public boolean isSet(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return false;
+		MappedByteBuffer buffer = mappings[y / rowsPerMapping];
+		int row = (y % rowsPerMapping) * stride;
+		return layout == Layout.PACKED ?
+				(buffer.get(row + (x >> 3)) & (0x80 >> (x & 7))) != 0 :
+				buffer.get(row + x) != 0;
+	}
+
+	/**
+	 * Sets every byte of the pixel data to zero, including any padding at the
+	 * ends of rows.
+	 */
+
+	public void clear() {
+		for (MappedByteBuffer buffer : mappings) {
+			int limit = buffer.limit();
+			int i = 0;
+			for (; i + 8 <= limit; i += 8) {
+				buffer.putLong(i, 0L);
+			}
+			for (; i < limit; i++) {
+				buffer.put(i, (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * Forces any changes to the pixels to be written to the storage device
+	 * that contains the mapped file.
+	 *
+	 * @see MappedByteBuffer#force()
+	 */
+
+	public void force() {
+		for (MappedByteBuffer buffer : mappings) {
+			buffer.force();
+		}
+	}
+
+	// plotter methods
+
+	@Override
+	public void plot(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return;
+		MappedByteBuffer buffer = mappings[y / rowsPerMapping];
+		int row = (y % rowsPerMapping) * stride;
+		if (layout == Layout.PACKED) {
+			int i = row + (x >> 3);
+			buffer.put(i, (byte) (buffer.get(i) | 0x80 >> (x & 7)));
+		} else {
+			buffer.put(row + x, ink);
+		}
+	}
+
+	@Override
+	public void plotSpan(int x, int y, int length) {
+		fillSpan(x, y, length, true);
+	}
+
+	@Override
+	public void plotBackgroundSpan(int x, int y, int length) {
+		fillSpan(x, y, length, false);
+	}
+
+	// private helper methods
+
+	// sets or clears a run of pixels
+	private void fillSpan(int x, int y, int length, boolean set) {
+		if (y < 0 || y >= height) return;
+		int to = Math.min(x + length, width);
+		if (x < 0) x = 0;
+		if (x >= to) return;
+		MappedByteBuffer buffer = mappings[y / rowsPerMapping];
+		int row = (y % rowsPerMapping) * stride;
+		if (layout == Layout.PACKED) {
+			int i = row + (x >> 3);
+			int j = row + ((to - 1) >> 3);
+			int first = 0xff >> (x & 7);
+			int last = 0xff00 >> (((to - 1) & 7) + 1);
+			if (i == j) {
+				fillByte(buffer, i, first & last, set);
+			} else {
+				fillByte(buffer, i, first, set);
+				byte fill = set ? (byte) 0xff : 0;
+				for (int k = i + 1; k < j; k++) {
+					buffer.put(k, fill);
+				}
+				fillByte(buffer, j, last, set);
+			}
+		} else {
+			byte value = set ? ink : 0;
+			for (int i = row + x, end = row + to; i < end; i++) {
+				buffer.put(i, value);
+			}
+		}
+	}
+
+	private static void fillByte(MappedByteBuffer buffer, int i, int mask, boolean set) {
+		int b = buffer.get(i);
+		buffer.put(i, (byte) (set ? b | mask : b & ~mask));
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Writes {@link Raster} instances as binary NetPBM images, either as bitmaps
+ * (PBM, magic number P4) or as greymaps (PGM, magic number P5). Images are
+ * written directly to a channel through a large direct buffer, without any
+ * dependency on AWT, so that rendered text can be saved cheaply in any
+ * environment.
+ *
+ * <p>
+ * This class can be used by multiple threads without external synchronization.
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class NetPbm {
+
+	// statics
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Writes a raster as a PBM image in which set pixels are black and clear
+	 * pixels are white.
+	 *
+	 * @param raster
+	 *            the raster to be written
+	 * @param channel
+	 *            the channel to which the image is written
+	 * @throws IOException
+	 *             if the image could not be written to the channel
+	 */
+
+	public static void writePbm(Raster raster, WritableByteChannel channel) throws IOException {
+		if (raster == null) throw new IllegalArgumentException("null raster");
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		int bytesPerRow = (raster.width() + 7) >> 3;
+		int fullWords = bytesPerRow >> 3; // words that supply all eight of their bytes
+		ByteBuffer buffer = buffer(bytesPerRow);
+		buffer.put(header("P4", raster));
+		long[] words = raster.words;
+		for (int y = 0, row = 0; y < raster.height(); y++, row += raster.stride) {
+			if (buffer.remaining() < bytesPerRow) drain(buffer, channel);
+			for (int i = 0; i < fullWords; i++) {
+				buffer.putLong(words[row + i]);
+			}
+			for (int i = fullWords << 3; i < bytesPerRow; i++) {
+				buffer.put((byte) (words[row + fullWords] >>> (56 - ((i & 7) << 3))));
+			}
+		}
+		drain(buffer, channel);
+	}
+
+	/**
+	 * Writes a raster as a PGM image in which set pixels are black and clear
+	 * pixels are white.
+	 *
+	 * @param raster
+	 *            the raster to be written
+	 * @param channel
+	 *            the channel to which the image is written
+	 * @throws IOException
+	 *             if the image could not be written to the channel
+	 */
+
+	public static void writePgm(Raster raster, WritableByteChannel channel) throws IOException {
+		writePgm(raster, 0, 255, channel);
+	}
+
+	/**
+	 * Writes a raster as an 8-bit PGM image with the specified grey levels.
+	 *
+	 * @param raster
+	 *            the raster to be written
+	 * @param ink
+	 *            the grey level of set pixels, from 0 (black) to 255 (white)
+	 * @param paper
+	 *            the grey level of clear pixels, from 0 (black) to 255 (white)
+	 * @param channel
+	 *            the channel to which the image is written
+	 * @throws IOException
+	 *             if the image could not be written to the channel
+	 */
+
+	public static void writePgm(Raster raster, int ink, int paper, WritableByteChannel channel) throws IOException {
+		if (raster == null) throw new IllegalArgumentException("null raster");
+		if (ink < 0 || ink > 255) throw new IllegalArgumentException("invalid ink");
+		if (paper < 0 || paper > 255) throw new IllegalArgumentException("invalid paper");
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		// maps each byte of eight pixels to eight bytes of grey levels
+		long[] levels = new long[256];
+		for (int b = 0; b < 256; b++) {
+			long l = 0L;
+			for (int i = 0; i < 8; i++) {
+				l = (l << 8) | ((b << i & 0x80) == 0 ? paper : ink);
+			}
+			levels[b] = l;
+		}
+		int width = raster.width();
+		int fullBytes = width >> 3; // bytes that supply all eight of their pixels
+		ByteBuffer buffer = buffer(0);
+		buffer.put(header("P5", raster)).put("255\n".getBytes(StandardCharsets.US_ASCII));
+		long[] words = raster.words;
+		for (int y = 0, row = 0; y < raster.height(); y++, row += raster.stride) {
+			for (int i = 0; i < fullBytes; i++) {
+				if (buffer.remaining() < 8) drain(buffer, channel);
+				buffer.putLong(levels[(int) (words[row + (i >> 3)] >>> (56 - ((i & 7) << 3))) & 0xff]);
+			}
+			int rem = width & 7;
+			if (rem != 0) {
+				if (buffer.remaining() < rem) drain(buffer, channel);
+				long l = levels[(int) (words[row + (fullBytes >> 3)] >>> (56 - ((fullBytes & 7) << 3))) & 0xff];
+				for (int i = 0; i < rem; i++) {
+					buffer.put((byte) (l >>> (56 - (i << 3))));
+				}
+			}
+		}
+		drain(buffer, channel);
+	}
+
+	// private helper methods
+
+	private static ByteBuffer buffer(int minimum) {
+		return ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, minimum));
+	}
+
+	private static byte[] header(String magic, Raster raster) {
+		return (magic + "\n" + raster.width() + " " + raster.height() + "\n").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	// constructor
+
+	private NetPbm() { }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * <p>
+ * Describes how numbers are laid out when they are rendered directly by
+ * {@link Ezo.Renderer#renderLong(long, NumberStyle)} and
+ * {@link Ezo.Renderer#renderDouble(double, NumberStyle)}, and measured by the
+ * corresponding width methods of {@link Ezo}. A style specifies a fixed number
+ * of decimal places, an optional character that separates groups of three
+ * integer digits, the character that precedes the decimal places, and whether
+ * positive numbers are preceded by a plus sign.
+ *
+ * <p>
+ * Numbers are always rendered with at least one integer digit and exactly the
+ * specified number of decimal places. Negative numbers are preceded by a minus
+ * sign unless they are rendered as zero.
+ *
+ * <p>
+ * Values of type <code>double</code> are rounded to the specified number of
+ * decimal places with halves rounded up, away from zero. Rounding is applied
+ * to the decimal digits of {@link Double#toString(double)}, not to the exact
+ * binary value, so that numbers are rounded just as they are by
+ * {@link String#format(String, Object...)}. For example, 2.675 is rendered
+ * with two decimal places as 2.68, though the nearest double is slightly
+ * less than 2.675.
+ *
+ * <p>
+ * This class can be used by multiple threads without external synchronization.
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class NumberStyle {
+
+	// statics
+
+	/**
+	 * The greatest number of decimal places that a style may specify.
+	 */
+
+	public static final int MAX_DECIMALS = 18;
+
+	// the powers of ten that can be represented by a long
+	private static final long[] POWERS = new long[19];
+
+	// the most decimal places for which twice the power of ten is exactly a double
+	private static final int EXACT_DECIMALS = 15;
+
+	// the bound on units below which the half-way points between them can be rounded to doubles unambiguously
+	private static final double EXACT_UNITS = 0x1p46;
+
+	static {
+		POWERS[0] = 1L;
+		for (int i = 1; i < POWERS.length; i++) {
+			POWERS[i] = POWERS[i - 1] * 10L;
+		}
+	}
+
+	private static final NumberStyle PLAIN = new NumberStyle(0, '\0', '.', false);
+
+	/**
+	 * A style that renders integers without grouping or a plus sign, and
+	 * which uses '.' as the decimal point.
+	 *
+	 * @return the plain number style
+	 */
+
+	public static NumberStyle plain() {
+		return PLAIN;
+	}
+
+	// the digit at the specified place of a magnitude which has been negated
+	static int digit(long negated, int place) {
+		return (int) -(negated / POWERS[place] % 10L);
+	}
+
+	// the magnitude of the value counted in units of its last decimal place and negated, or 1 if that cannot be represented
+	// the magnitude is rounded half up from the decimal digits of Double.toString(), as String.format() rounds them
+	static long negatedUnits(double value, int decimals) {
+		double magnitude = Math.abs(value);
+		double units = magnitude * POWERS[decimals];
+		if (decimals <= EXACT_DECIMALS && units < EXACT_UNITS) {
+			// the product is rounded monotonically, so the magnitude lies between n and n + 1 units
+			long n = (long) units;
+			// the half-way point, rounded to a double; if it rounds to the magnitude, it is the magnitude's shortest digits
+			double half = (2 * n + 1) / (2.0 * POWERS[decimals]);
+			return magnitude >= half ? -n - 1 : -n;
+		}
+		if (!(units < 0x1p63)) return 1L;
+		BigInteger rounded = rounded(magnitude, decimals);
+		return rounded.bitLength() < 63 ? -rounded.longValue() : 1L;
+	}
+
+	// the magnitude of a finite value rounded half up to the specified number of decimal places, and then unscaled
+	private static BigInteger rounded(double magnitude, int decimals) {
+		return BigDecimal.valueOf(magnitude).setScale(decimals, RoundingMode.HALF_UP).unscaledValue();
+	}
+
+	private static void checkChar(char c, String name) {
+		if (c < ' ' || c > '~') throw new IllegalArgumentException("unprintable " + name);
+	}
+
+	// fields
+
+	private final int decimals;
+	private final char grouping; // zero if digits are not grouped
+	private final char point;
+	private final boolean plus;
+
+	private NumberStyle(int decimals, char grouping, char point, boolean plus) {
+		this.decimals = decimals;
+		this.grouping = grouping;
+		this.point = point;
+		this.plus = plus;
+	}
+
+	// accessors
+
+	/**
+	 * The number of decimal places rendered.
+	 *
+	 * @return the number of digits after the decimal point
+	 * @see #withDecimals(int)
+	 */
+
+	public int decimals() {
+		return decimals;
+	}
+
+	/**
+	 * Whether the integer digits are separated into groups of three.
+	 *
+	 * @return true if a grouping separator is rendered, false otherwise
+	 * @see #withGrouping(char)
+	 */
+
+	public boolean isGrouped() {
+		return grouping != '\0';
+	}
+
+	/**
+	 * The character that separates groups of integer digits.
+	 *
+	 * @return the grouping separator
+	 * @throws IllegalStateException
+	 *             if digits are not grouped in this style
+	 * @see #isGrouped()
+	 */
+
+	public char grouping() {
+		if (grouping == '\0') throw new IllegalStateException("not grouped");
+		return grouping;
+	}
+
+	/**
+	 * The character rendered before the decimal places.
+	 *
+	 * @return the decimal point
+	 * @see #withDecimalPoint(char)
+	 */
+
+	public char decimalPoint() {
+		return point;
+	}
+
+	/**
+	 * Whether numbers greater than or equal to zero are preceded by a plus
+	 * sign.
+	 *
+	 * @return true if positive numbers are signed, false otherwise
+	 * @see #withPlusSign(boolean)
+	 */
+
+	public boolean isPlusSigned() {
+		return plus;
+	}
+
+	// methods
+
+	/**
+	 * This number style with the specified number of decimal places.
+	 *
+	 * @param decimals
+	 *            the number of digits after the decimal point, not exceeding
+	 *            {@link #MAX_DECIMALS}
+	 * @return a number style
+	 */
+
+	public NumberStyle withDecimals(int decimals) {
+		if (decimals < 0) throw new IllegalArgumentException("negative decimals");
+		if (decimals > MAX_DECIMALS) throw new IllegalArgumentException("too many decimals");
+		return decimals == this.decimals ? this : new NumberStyle(decimals, grouping, point, plus);
+	}
+
+	/**
+	 * This number style with groups of three integer digits separated by the
+	 * specified character.
+	 *
+	 * @param grouping
+	 *            a printable ASCII character, including space
+	 * @return a number style
+	 * @see #withoutGrouping()
+	 */
+
+	public NumberStyle withGrouping(char grouping) {
+		checkChar(grouping, "grouping");
+		return grouping == this.grouping ? this : new NumberStyle(decimals, grouping, point, plus);
+	}
+
+	/**
+	 * This number style with integer digits that are not grouped.
+	 *
+	 * @return a number style
+	 * @see #withGrouping(char)
+	 */
+
+	public NumberStyle withoutGrouping() {
+		return grouping == '\0' ? this : new NumberStyle(decimals, '\0', point, plus);
+	}
+
+	/**
+	 * This number style with the specified decimal point.
+	 *
+	 * @param point
+	 *            a printable ASCII character, including space
+	 * @return a number style
+	 */
+
+	public NumberStyle withDecimalPoint(char point) {
+		checkChar(point, "point");
+		return point == this.point ? this : new NumberStyle(decimals, grouping, point, plus);
+	}
+
+	/**
+	 * This number style with plus signs as specified.
+	 *
+	 * @param plus
+	 *            true if numbers greater than or equal to zero should be
+	 *            preceded by a plus sign, false otherwise
+	 * @return a number style
+	 */
+
+	public NumberStyle withPlusSign(boolean plus) {
+		return plus == this.plus ? this : new NumberStyle(decimals, grouping, point, plus);
+	}
+
+	// object methods
+
+	@Override
+	public int hashCode() {
+		return ((decimals * 31 + grouping) * 31 + point) * 31 + (plus ? 1 : 0);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof NumberStyle)) return false;
+		NumberStyle that = (NumberStyle) obj;
+		return this.decimals == that.decimals && this.grouping == that.grouping && this.point == that.point && this.plus == that.plus;
+	}
+
+	@Override
+	public String toString() {
+		return "decimals: " + decimals + ", grouping: " + (grouping == '\0' ? "none" : "'" + grouping + "'") + ", point: '" + point + "', plus: " + plus;
+	}
+
+	// package scoped methods
+
+	// the number of digits rendered for a magnitude which has been negated
+	int digitCount(long negated) {
+		int count = 1;
+		while (count < POWERS.length && negated <= -POWERS[count]) count++;
+		return Math.max(count, decimals + 1);
+	}
+
+	// the sign that precedes a magnitude which has been negated, or zero if there is none
+	char sign(long negated, boolean negative) {
+		if (negative && negated != 0L) return '-';
+		return plus ? '+' : '\0';
+	}
+
+	// whether the separator follows the digit at the specified place
+	boolean separated(int place) {
+		if (place == 0) return false;
+		if (place == decimals) return true;
+		return grouping != '\0' && place > decimals && (place - decimals) % 3 == 0;
+	}
+
+	// the separator that follows the digit at the specified place, which must be separated
+	char separator(int place) {
+		return place == decimals ? point : grouping;
+	}
+
+	// formats values that cannot be represented in units of their last decimal place, which are infinite, NaN or very large
+	String format(double value) {
+		if (Double.isNaN(value)) return "NaN";
+		boolean negative = value < 0.0;
+		char sign = negative ? '-' : plus ? '+' : '\0';
+		StringBuilder sb = new StringBuilder();
+		if (sign != '\0') sb.append(sign);
+		if (Double.isInfinite(value)) return sb.append("Infinity").toString();
+		String digits = rounded(Math.abs(value), decimals).toString();
+		for (int place = Math.max(digits.length(), decimals + 1) - 1; place >= 0; place--) {
+			sb.append(place < digits.length() ? digits.charAt(digits.length() - 1 - place) : '0');
+			if (separated(place)) sb.append(separator(place));
+		}
+		return sb.toString();
+	}
+
+}
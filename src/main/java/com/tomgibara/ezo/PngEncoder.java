@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * Encodes {@link Raster} instances as PNG images with one bit per pixel.
+ * Images are either greyscale, with set pixels black and clear pixels white,
+ * or indexed, with set and clear pixels taking colours from a two entry
+ * palette. Rows are taken directly from the packed words of the raster and
+ * compressed without filtering, without any dependency on AWT.
+ *
+ * <p>
+ * An encoder retains its compressor and buffers between images so that
+ * encoding many small images is cheap. The native resources of the
+ * compressor are released when the encoder is closed.
+ *
+ * <p>
+ * Multi-threaded use of this class requires external synchronization
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class PngEncoder implements AutoCloseable {
+
+	// statics
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+	private static final int TYPE_IHDR = 0x49484452;
+	private static final int TYPE_PLTE = 0x504c5445;
+	private static final int TYPE_IDAT = 0x49444154;
+	private static final int TYPE_IEND = 0x49454e44;
+
+	private static final int BUFFER_SIZE = 32 * 1024; // the maximum size of an IDAT chunk
+
+	// fields
+
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	private final byte[] buffer = new byte[BUFFER_SIZE + 12]; // room for chunk length, type and crc
+	private byte[] row = new byte[0];
+	private boolean indexed = false;
+	private int ink = 0x000000;
+	private int paper = 0xffffff;
+
+	// constructors
+
+	/**
+	 * Creates an encoder that compresses images with the default compression
+	 * level.
+	 */
+
+	public PngEncoder() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates an encoder that compresses images with the specified compression
+	 * level.
+	 *
+	 * @param level
+	 *            the compression level, from 0 to 9 inclusive, or -1 for the
+	 *            default compression level
+	 * @see Deflater#setLevel(int)
+	 */
+
+	public PngEncoder(int level) {
+		if (level < -1 || level > 9) throw new IllegalArgumentException("invalid level");
+		deflater = new Deflater(level);
+	}
+
+	// accessors
+
+	/**
+	 * <p>
+	 * Causes subsequent images to be encoded with a palette containing the
+	 * specified colours. Colours are specified as RGB values in the form
+	 * <code>0xRRGGBB</code>.
+	 *
+	 * <p>
+	 * Calls to this method can be chained.
+	 *
+	 * @param ink
+	 *            the colour of set pixels
+	 * @param paper
+	 *            the colour of clear pixels
+	 * @return this encoder
+	 */
+
+	public PngEncoder palette(int ink, int paper) {
+		this.ink = ink & 0xffffff;
+		this.paper = paper & 0xffffff;
+		indexed = true;
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Causes subsequent images to be encoded as greyscale images in which set
+	 * pixels are black and clear pixels are white. This is the default.
+	 *
+	 * <p>
+	 * Calls to this method can be chained.
+	 *
+	 * @return this encoder
+	 */
+
+	public PngEncoder greyscale() {
+		ink = 0x000000;
+		paper = 0xffffff;
+		indexed = false;
+		return this;
+	}
+
+	/**
+	 * Whether images are encoded with a palette.
+	 *
+	 * @return true if images are indexed, false if they are greyscale
+	 */
+
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	// methods
+
+	/**
+	 * Writes a raster as a PNG image to a channel.
+	 *
+	 * @param raster
+	 *            a raster with a non-zero width and height
+	 * @param channel
+	 *            the channel to which the image is written
+	 * @throws IOException
+	 *             if the image could not be written to the channel
+	 */
+
+	public void write(Raster raster, WritableByteChannel channel) throws IOException {
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		write(raster, Channels.newOutputStream(channel));
+	}
+
+	/**
+	 * Writes a raster as a PNG image to a stream. The stream is neither
+	 * flushed nor closed.
+	 *
+	 * @param raster
+	 *            a raster with a non-zero width and height
+	 * @param out
+	 *            the stream to which the image is written
+	 * @throws IOException
+	 *             if the image could not be written to the stream
+	 */
+
+	public void write(Raster raster, OutputStream out) throws IOException {
+		if (raster == null) throw new IllegalArgumentException("null raster");
+		if (out == null) throw new IllegalArgumentException("null out");
+		int width = raster.width();
+		int height = raster.height();
+		if (width == 0 || height == 0) throw new IllegalArgumentException("empty raster");
+
+		out.write(SIGNATURE);
+
+		int p = 8;
+		p = putInt(p, width);
+		p = putInt(p, height);
+		buffer[p++] = 1; // bit depth
+		buffer[p++] = (byte) (indexed ? 3 : 0); // colour type
+		buffer[p++] = 0; // compression method
+		buffer[p++] = 0; // filter method
+		buffer[p++] = 0; // interlace method
+		writeChunk(out, TYPE_IHDR, p - 8);
+
+		if (indexed) {
+			p = 8;
+			p = putRgb(p, paper);
+			p = putRgb(p, ink);
+			writeChunk(out, TYPE_PLTE, p - 8);
+		}
+
+		int bytesPerRow = (width + 7) >> 3;
+		int fullWords = bytesPerRow >> 3; // words that supply all eight of their bytes
+		// greyscale images have zero for black
+		long flip = indexed ? 0L : -1L;
+		int mask = 0xff00 >> (((width - 1) & 7) + 1); // excludes padding from the last byte
+		if (row.length < bytesPerRow + 1) row = new byte[bytesPerRow + 1];
+		long[] words = raster.words;
+		deflater.reset();
+		int length = 0; // the length of compressed data in the buffer
+		for (int y = 0, r = 0; y < height; y++, r += raster.stride) {
+			// filter type zero, then the pixels
+			row[0] = 0;
+			int i = 1;
+			for (int w = 0; w < fullWords; w++) {
+				long word = words[r + w] ^ flip;
+				for (int s = 56; s >= 0; s -= 8) {
+					row[i++] = (byte) (word >>> s);
+				}
+			}
+			if (i <= bytesPerRow) {
+				long word = words[r + fullWords] ^ flip;
+				for (int s = 56; i <= bytesPerRow; s -= 8) {
+					row[i++] = (byte) (word >>> s);
+				}
+			}
+			row[bytesPerRow] &= mask;
+			deflater.setInput(row, 0, bytesPerRow + 1);
+			while (!deflater.needsInput()) {
+				length = deflate(out, length);
+			}
+		}
+		deflater.finish();
+		while (!deflater.finished()) {
+			length = deflate(out, length);
+		}
+		if (length > 0) writeChunk(out, TYPE_IDAT, length);
+
+		writeChunk(out, TYPE_IEND, 0);
+	}
+
+	/**
+	 * Releases the compressor used by this encoder. The encoder cannot be
+	 * used after it has been closed.
+	 */
+
+	@Override
+	public void close() {
+		deflater.end();
+	}
+
+	// private helper methods
+
+	// compresses into the buffer, emitting an IDAT chunk when it is full
+	private int deflate(OutputStream out, int length) throws IOException {
+		length += deflater.deflate(buffer, 8 + length, BUFFER_SIZE - length);
+		if (length == BUFFER_SIZE) {
+			writeChunk(out, TYPE_IDAT, length);
+			length = 0;
+		}
+		return length;
+	}
+
+	// writes a chunk whose data is at offset 8 in the buffer
+	private void writeChunk(OutputStream out, int type, int length) throws IOException {
+		putInt(0, length);
+		putInt(4, type);
+		crc.reset();
+		crc.update(buffer, 4, length + 4);
+		putInt(length + 8, (int) crc.getValue());
+		out.write(buffer, 0, length + 12);
+	}
+
+	private int putInt(int p, int value) {
+		buffer[p++] = (byte) (value >> 24);
+		buffer[p++] = (byte) (value >> 16);
+		buffer[p++] = (byte) (value >>  8);
+		buffer[p++] = (byte) (value      );
+		return p;
+	}
+
+	private int putRgb(int p, int rgb) {
+		buffer[p++] = (byte) (rgb >> 16);
+		buffer[p++] = (byte) (rgb >>  8);
+		buffer[p++] = (byte) (rgb      );
+		return p;
+	}
+
+}
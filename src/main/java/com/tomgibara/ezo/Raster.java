@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.util.Arrays;
+
+import com.tomgibara.ezo.Ezo.Plotter;
+
+/**
+ * <p>
+ * A rectangle of pixels, each either set or clear, that can be used as the
+ * target of an Ezo {@link Ezo.Renderer}. Pixels are packed into 64-bit words,
+ * 64 pixels to a word, with each row starting on a new word. Within a word,
+ * the most significant bit holds the left-most pixel.
+ *
+ * <p>
+ * Plotting a pixel sets it, and plotting a background pixel clears it.
+ * Pixels plotted outside the bounds of the raster are ignored, and runs of
+ * pixels are filled a word at a time.
+ *
+ * <p>
+ * Multi-threaded use of this class requires external synchronization
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class Raster implements Plotter {
+
+	private final int width;
+	private final int height;
+	final int stride;   // the number of words in each row
+	final long[] words; // the pixels, row by row
+
+	/**
+	 * Creates a new raster in which every pixel is clear.
+	 *
+	 * @param width
+	 *            the width of the raster in pixels
+	 * @param height
+	 *            the height of the raster in pixels
+	 */
+
+	public Raster(int width, int height) {
+		if (width < 0) throw new IllegalArgumentException("negative width");
+		if (height < 0) throw new IllegalArgumentException("negative height");
+		stride = (width + 63) >> 6;
+		long size = (long) stride * height;
+		if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("dimensions too large");
+		this.width = width;
+		this.height = height;
+		words = new long[(int) size];
+	}
+
+	// accessors
+
+	/**
+	 * The width of the raster.
+	 *
+	 * @return the width in pixels
+	 */
+
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * The height of the raster.
+	 *
+	 * @return the height in pixels
+	 */
+
+	public int height() {
+		return height;
+	}
+
+	// methods
+
+	/**
+	 * Whether the pixel at the given coordinates is set. Pixels outside the
+	 * bounds of the raster are reported as clear.
+	 *
+	 * @param x
+	 *            the x coordinate
+	 * @param y
+	 *            the y coordinate
+	 * @return true if the pixel is set, false otherwise
+	 */
+
+	public boolean isSet(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return false;
+		return (words[y * stride + (x >> 6)] << x) < 0L;
+	}
+
+	/**
+	 * Copies a rectangle of pixels into an array of 32-bit values, such as the
+	 * packed RGB pixels of an image. Set pixels are stored as the ink value
+	 * and clear pixels as the paper value. The pixel at <code>(x + i, y +
+	 * j)</code> is stored at index <code>offset + j * scanLength + i</code>,
+	 * as in the <code>setRGB</code> method of
+	 * <code>java.awt.image.BufferedImage</code>.
+	 *
+	 * @param x
+	 *            the x coordinate of the left of the rectangle
+	 * @param y
+	 *            the y coordinate of the top of the rectangle
+	 * @param width
+	 *            the width of the rectangle
+	 * @param height
+	 *            the height of the rectangle
+	 * @param ink
+	 *            the value stored for set pixels
+	 * @param paper
+	 *            the value stored for clear pixels
+	 * @param pixels
+	 *            the array into which the values are stored
+	 * @param offset
+	 *            the index at which the value of the top-left pixel is stored
+	 * @param scanLength
+	 *            the distance between the indices of vertically adjacent
+	 *            pixels
+	 */
+
+	public void expandPixels(int x, int y, int width, int height, int ink, int paper, int[] pixels, int offset, int scanLength) {
+		if (width < 0) throw new IllegalArgumentException("negative width");
+		if (height < 0) throw new IllegalArgumentException("negative height");
+		if (x < 0 || y < 0 || x + width > this.width || y + height > this.height) throw new IllegalArgumentException("rectangle exceeds raster");
+		if (pixels == null) throw new IllegalArgumentException("null pixels");
+		Kernels kernels = Kernels.PREFERRED;
+		for (int j = 0; j < height; j++) {
+			kernels.expand(words, (y + j) * stride, x, width, ink, paper, pixels, offset + j * scanLength);
+		}
+	}
+
+	/**
+	 * Clears every pixel in the raster.
+	 */
+
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	// plotter methods
+
+	@Override
+	public void plot(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return;
+		words[y * stride + (x >> 6)] |= Long.MIN_VALUE >>> x;
+	}
+
+	@Override
+	public void plotSpan(int x, int y, int length) {
+		if (y < 0 || y >= height) return;
+		int to = Math.min(x + length, width);
+		if (x < 0) x = 0;
+		if (x >= to) return;
+		int row = y * stride;
+		int i = row + (x >> 6);
+		int j = row + ((to - 1) >> 6);
+		long first = -1L >>> x;
+		long last = -1L << (63 - ((to - 1) & 63));
+		if (i == j) {
+			words[i] |= first & last;
+		} else {
+			words[i] |= first;
+			Arrays.fill(words, i + 1, j, -1L);
+			words[j] |= last;
+		}
+	}
+
+	@Override
+	public void plotBackgroundSpan(int x, int y, int length) {
+		if (y < 0 || y >= height) return;
+		int to = Math.min(x + length, width);
+		if (x < 0) x = 0;
+		if (x >= to) return;
+		int row = y * stride;
+		int i = row + (x >> 6);
+		int j = row + ((to - 1) >> 6);
+		long first = -1L >>> x;
+		long last = -1L << (63 - ((to - 1) & 63));
+		if (i == j) {
+			words[i] &= ~(first & last);
+		} else {
+			words[i] &= ~first;
+			Arrays.fill(words, i + 1, j, 0L);
+			words[j] &= ~last;
+		}
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+import com.tomgibara.ezo.Ezo.Renderer;
+
+/**
+ * <p>
+ * A writer that renders all of the characters written to it as a single
+ * string. Instances of this class are obtained from the
+ * {@link Renderer#writer()} method of a {@link Renderer}.
+ *
+ * <p>
+ * The writer retains only the state needed to kern the next character and to
+ * complete the underline, so text of any length may be rendered in chunks
+ * using a fixed amount of memory. The pixels plotted are the same as those
+ * plotted by a single call to {@link Renderer#renderString(String)} with the
+ * concatenation of the chunks.
+ *
+ * <p>
+ * Flushing the writer has no effect. Closing the writer completes any
+ * underline; further attempts to write will then fail.
+ *
+ * <p>
+ * Multi-threaded use of this class requires external synchronization
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class RenderWriter extends Writer {
+
+	private final Renderer.Text text;
+	private int advance = -1; // the total advance once closed
+
+	RenderWriter(Renderer.Text text) {
+		this.text = text;
+	}
+
+	// accessors
+
+	/**
+	 * Whether the writer has been closed.
+	 *
+	 * @return true if the writer has been closed, false otherwise
+	 */
+
+	public boolean isClosed() {
+		return advance != -1;
+	}
+
+	/**
+	 * The number of pixels advanced by the renderer over all of the
+	 * characters written. This is only available after the writer has been
+	 * closed.
+	 *
+	 * @return the number of pixels advanced by the renderer
+	 * @throws IllegalStateException
+	 *             if the writer has not been closed
+	 */
+
+	public int advance() {
+		if (advance == -1) throw new IllegalStateException("not closed");
+		return advance;
+	}
+
+	// writer methods
+
+	@Override
+	public void write(int c) throws IOException {
+		checkOpen();
+		text.render(c & 0xffff);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if (cbuf == null) throw new IllegalArgumentException("null cbuf");
+		if (off < 0 || len < 0 || off + len > cbuf.length) throw new IndexOutOfBoundsException();
+		checkOpen();
+		for (int i = off, to = off + len; i < to; i++) {
+			text.render(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		if (str == null) throw new IllegalArgumentException("null str");
+		append(str, off, off + len);
+	}
+
+	@Override
+	public RenderWriter append(char c) throws IOException {
+		write(c);
+		return this;
+	}
+
+	@Override
+	public RenderWriter append(CharSequence csq) throws IOException {
+		if (csq == null) throw new IllegalArgumentException("null csq");
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public RenderWriter append(CharSequence csq, int start, int end) throws IOException {
+		if (csq == null) throw new IllegalArgumentException("null csq");
+		if (start < 0 || start > end || end > csq.length()) throw new IndexOutOfBoundsException();
+		checkOpen();
+		for (int i = start; i < end; i++) {
+			text.render(csq.charAt(i));
+		}
+		return this;
+	}
+
+	/**
+	 * Renders all of the remaining characters in the supplied buffer. On
+	 * return, the position of the buffer will equal its limit.
+	 *
+	 * @param buffer
+	 *            the characters to render
+	 * @throws IOException
+	 *             if the writer has been closed
+	 */
+
+	public void write(CharBuffer buffer) throws IOException {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		checkOpen();
+		if (buffer.hasArray()) {
+			char[] array = buffer.array();
+			int offset = buffer.arrayOffset();
+			for (int i = buffer.position(), to = buffer.limit(); i < to; i++) {
+				text.render(array[offset + i]);
+			}
+			buffer.position(buffer.limit());
+		} else {
+			while (buffer.hasRemaining()) {
+				text.render(buffer.get());
+			}
+		}
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+		if (advance == -1) advance = text.finish();
+	}
+
+	private void checkOpen() throws IOException {
+		if (advance != -1) throw new IOException("closed");
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A sequence of strings, each with its own Ezo style, that is measured and
+ * rendered as a single piece of text. Characters are kerned across the
+ * boundaries between segments, as far as the kerning classes of the two
+ * styles allow, and the underlines of consecutive underlined segments are
+ * joined. Styled text is rendered with {@link Ezo.Renderer#renderStyled(StyledText)}.
+ *
+ * <p>
+ * Instances are immutable and are created by {@link #of(Ezo, String)} and
+ * {@link #append(Ezo, String)}. The widths of the text are computed
+ * incrementally as segments are appended, so measuring styled text requires
+ * no further pass over its characters. Successive appends share storage that
+ * grows geometrically, so that text with many segments can be built one
+ * segment at a time in linear time.
+ *
+ * <p>
+ * This class can be used by multiple threads without external synchronization.
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class StyledText {
+
+	private static final StyledText EMPTY = new StyledText(new Ezo[0], new String[0], 0, new AtomicInteger(), false, null, -1, 0);
+
+	/**
+	 * Styled text with no segments.
+	 *
+	 * @return empty styled text
+	 */
+
+	public static StyledText empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Styled text consisting of a single segment.
+	 *
+	 * @param style
+	 *            the style in which the string is rendered
+	 * @param str
+	 *            the string
+	 * @return styled text
+	 */
+
+	public static StyledText of(Ezo style, String str) {
+		return EMPTY.append(style, str);
+	}
+
+	final Ezo[] styles; // possibly shared with longer texts that extend this one
+	final String[] strs;
+	final int count; // the number of segments in this text
+	private final AtomicInteger claimed; // the number of array elements claimed by this text or any that extend it
+	final boolean underlined; // whether any segment is underlined
+	private final Ezo lastStyle; // the style of the last character
+	private final int last; // the last character or -1
+	private final int advance;
+
+	private StyledText(Ezo[] styles, String[] strs, int count, AtomicInteger claimed, boolean underlined, Ezo lastStyle, int last, int advance) {
+		this.styles = styles;
+		this.strs = strs;
+		this.count = count;
+		this.claimed = claimed;
+		this.underlined = underlined;
+		this.lastStyle = lastStyle;
+		this.last = last;
+		this.advance = advance;
+	}
+
+	// accessors
+
+	/**
+	 * The number of segments in the text.
+	 *
+	 * @return the segment count
+	 */
+
+	public int segmentCount() {
+		return count;
+	}
+
+	/**
+	 * The style of a segment.
+	 *
+	 * @param index
+	 *            the index of the segment
+	 * @return the style in which the segment is rendered
+	 */
+
+	public Ezo segmentStyle(int index) {
+		checkIndex(index);
+		return styles[index];
+	}
+
+	/**
+	 * The string of a segment.
+	 *
+	 * @param index
+	 *            the index of the segment
+	 * @return the characters of the segment
+	 */
+
+	public String segmentString(int index) {
+		checkIndex(index);
+		return strs[index];
+	}
+
+	/**
+	 * The distance advanced along the baseline when rendering the text.
+	 * Non-printable characters and characters not supported by the typeface
+	 * are treated as having zero width.
+	 *
+	 * @return the baseline width of the text
+	 * @see Ezo.Renderer#renderStyled(StyledText)
+	 */
+
+	public int baselineWidth() {
+		return advance;
+	}
+
+	/**
+	 * The width required to accommodate a rendering of the text.
+	 *
+	 * @return the rendered width of the text
+	 */
+
+	public int renderedWidth() {
+		return last == -1 || advance == 0 ? 0 : advance + lastStyle.overhang(last);
+	}
+
+	// methods
+
+	/**
+	 * Styled text that extends this text with an additional segment. Every
+	 * segment must be styled with the same scale.
+	 *
+	 * @param style
+	 *            the style in which the string is rendered
+	 * @param str
+	 *            the string
+	 * @return styled text with the additional segment
+	 */
+
+	public StyledText append(Ezo style, String str) {
+		if (style == null) throw new IllegalArgumentException("null style");
+		if (str == null) throw new IllegalArgumentException("null str");
+		if (count > 0 && style.scale() != styles[0].scale()) throw new IllegalArgumentException("mismatched scale");
+		Ezo[] styles = this.styles;
+		String[] strs = this.strs;
+		AtomicInteger claimed = this.claimed;
+		// the arrays can only be shared with the first text to extend this one, and only while they have room
+		if (count == styles.length || !claimed.compareAndSet(count, count + 1)) {
+			int length = Math.max(4, count * 2);
+			styles = Arrays.copyOf(styles, length);
+			strs = Arrays.copyOf(strs, length);
+			claimed = new AtomicInteger(count + 1);
+		}
+		styles[count] = style;
+		strs[count] = str;
+		Ezo prevStyle = lastStyle;
+		int prev = last;
+		int advance = this.advance;
+		for (int i = 0; i < str.length(); i++) {
+			int next = str.charAt(i);
+			// the style of the previous character is irrelevant to the first character
+			advance += (prev == -1 ? style : prevStyle).advance(prev, style, next);
+			prev = next;
+			prevStyle = style;
+		}
+		return new StyledText(styles, strs, count + 1, claimed, underlined || style.isUnderlined(), prevStyle, prev, advance);
+	}
+
+	// object methods
+
+	/**
+	 * The characters of the text, without styling.
+	 *
+	 * @return the concatenated segment strings
+	 */
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(strs[i]);
+		}
+		return sb.toString();
+	}
+
+	// package scoped methods
+
+	// the scale shared by every style
+	int scale() {
+		return count == 0 ? 1 : styles[0].scale();
+	}
+
+	// private helper methods
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= count) throw new IllegalArgumentException("invalid index");
+	}
+
+}
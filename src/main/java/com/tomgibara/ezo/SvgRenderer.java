@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Renders text in an {@link Ezo} font as SVG path elements. Instances of this
+ * class are obtained from the {@link Ezo#svgRenderer()} method of
+ * {@link Ezo}.
+ *
+ * <p>
+ * Each rendering produces a single <code>&lt;path&gt;</code> element that
+ * covers every pixel of the text, including any underline. The pixels are
+ * merged into maximal horizontal runs, and runs that are repeated on
+ * consecutive rows are merged into taller rectangles, so that the path
+ * contains far fewer rectangles than the text contains pixels. The element
+ * carries no presentation attributes; its fill is typically inherited from an
+ * enclosing group, for which a <code>shape-rendering</code> of
+ * <code>crispEdges</code> is recommended.
+ *
+ * <p>
+ * The path data is streamed to an {@link Appendable} as the text is rendered.
+ * Pixels are buffered only until the renderer has advanced far enough that no
+ * subsequent glyph can reach them, so the memory required does not grow with
+ * the length of the text. Rectangles are written in the order that their
+ * right-hand edges are settled.
+ *
+ * <p>
+ * This class can be used by multiple threads without external synchronization.
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class SvgRenderer {
+
+	private final Ezo ezo;
+
+	SvgRenderer(Ezo ezo) {
+		this.ezo = ezo;
+	}
+
+	// public accessors
+
+	/**
+	 * The Ezo font that backs this renderer.
+	 *
+	 * @return the ezo instance from which this renderer was created
+	 */
+
+	public Ezo ezo() {
+		return ezo;
+	}
+
+	// public methods
+
+	/**
+	 * Renders the supplied string as an SVG path element. Nothing is written
+	 * if the string has no ink. Non-printable and unsupported characters are
+	 * omitted.
+	 *
+	 * @param str
+	 *            the string to be rendered
+	 * @param x
+	 *            the x coordinate of the start of the text
+	 * @param y
+	 *            the y coordinate of the text baseline
+	 * @param out
+	 *            the destination for the path element
+	 * @return the number of pixels advanced along the baseline
+	 * @throws IOException
+	 *             if the characters could not be appended
+	 * @see Ezo.Renderer#renderString(String)
+	 */
+
+	public int renderString(String str, int x, int y, Appendable out) throws IOException {
+		if (str == null) throw new IllegalArgumentException("null str");
+		if (out == null) throw new IllegalArgumentException("null out");
+		PathPlotter plotter = new PathPlotter(ezo, x, y, out);
+		int advance = ezo.renderer(plotter).locate(x, y).renderString(str);
+		plotter.finish();
+		return advance;
+	}
+
+	/**
+	 * Renders the supplied styled text as a single SVG path element. Nothing
+	 * is written if the text has no ink. Non-printable and unsupported
+	 * characters are omitted.
+	 *
+	 * @param text
+	 *            the styled text to be rendered
+	 * @param x
+	 *            the x coordinate of the start of the text
+	 * @param y
+	 *            the y coordinate of the text baseline
+	 * @param out
+	 *            the destination for the path element
+	 * @return the number of pixels advanced along the baseline
+	 * @throws IOException
+	 *             if the characters could not be appended
+	 * @see Ezo.Renderer#renderStyled(StyledText)
+	 */
+
+	public int renderStyled(StyledText text, int x, int y, Appendable out) throws IOException {
+		if (text == null) throw new IllegalArgumentException("null text");
+		if (out == null) throw new IllegalArgumentException("null out");
+		// every style of the text shares the same scale, and so the same rows
+		PathPlotter plotter = new PathPlotter(text.count == 0 ? ezo : text.styles[0], x, y, out);
+		int advance = ezo.renderer(plotter).locate(x, y).renderStyled(text);
+		plotter.finish();
+		return advance;
+	}
+
+	// inner classes
+
+	// merges the pixels of settled columns into rectangles, buffering only the columns that are not yet settled
+	private static final class PathPlotter implements Ezo.SettlingPlotter {
+
+		private final int x; // the x coordinate of the start of the text
+		private final int top; // the y coordinate of the top row of the text
+		private final Path path;
+		private long[][] rows; // the pixels of the buffered columns, by row, with the column at base in the lowest bit
+		private int base; // the column of the lowest bit of the buffer
+		private int settled; // the column before which every run has been processed
+		private int limit; // the column after the right-most pixel plotted
+		private final int[] starts; // the column at which the current run of each row started, or Integer.MIN_VALUE
+		private final long[] changes; // the columns at which the runs of each row start or end, within one word
+		private IOException exception = null; // the first exception raised by the destination
+
+		PathPlotter(Ezo ezo, int x, int y, Appendable out) {
+			this.x = x;
+			int height = ezo.ascent() + ezo.descent();
+			top = y - ezo.ascent();
+			path = new Path(out);
+			rows = new long[height][1];
+			// no glyph can reach further back than this
+			base = x - 4 * ezo.scale();
+			settled = base;
+			limit = settled;
+			starts = new int[height];
+			Arrays.fill(starts, Integer.MIN_VALUE);
+			changes = new long[height];
+		}
+
+		@Override
+		public void plot(int x, int y) {
+			plotSpan(x, y, 1);
+		}
+
+		@Override
+		public void plotSpan(int x, int y, int length) {
+			int end = x + length;
+			if (end > limit) limit = end;
+			long[] bits = bits(y - top, end);
+			for (int c = x - base; c < end - base; ) {
+				int i = c >> 6;
+				int n = Math.min(64 - (c & 63), end - base - c);
+				bits[i] |= (-1L >>> (64 - n)) << c;
+				c += n;
+			}
+		}
+
+		@Override
+		public void settled(int position) {
+			settle(x + position);
+		}
+
+		// processes every buffered column and completes the path element
+		void finish() throws IOException {
+			// the column after the right-most pixel closes every run
+			settle(limit + 1);
+			if (exception == null) path.finish();
+			if (exception != null) throw exception;
+		}
+
+		// the buffered pixels of a row, enlarging the buffer to accommodate the given column
+		private long[] bits(int row, int to) {
+			int words = (to - base + 63) >> 6;
+			if (words > rows[row].length) {
+				int length = rows[row].length;
+				while (length < words) length <<= 1;
+				for (int r = 0; r < rows.length; r++) {
+					rows[r] = Arrays.copyOf(rows[r], length);
+				}
+			}
+			return rows[row];
+		}
+
+		// processes the runs of every row that end before the given column
+		private void settle(int to) {
+			while (settled < to) {
+				// the columns to process, relative to the base, which lie within the first word
+				int from = settled - base;
+				int end = Math.min(to - base, 64);
+				long mask = (-1L >>> (64 - end + from)) << from;
+				long any = 0L;
+				for (int r = 0; r < rows.length; r++) {
+					long bits = rows[r][0];
+					// a change occurs wherever a column differs from the one before it
+					long before = bits << 1 | (starts[r] == Integer.MIN_VALUE ? 0L : 1L << from);
+					long change = (bits ^ before) & mask;
+					changes[r] = change;
+					any |= change;
+				}
+				while (any != 0L) {
+					int c = Long.numberOfTrailingZeros(any);
+					any &= any - 1L;
+					runs(base + c, 1L << c);
+				}
+				settled = base + end;
+				// discard the first word once every column it contains is processed
+				if (end == 64) {
+					for (long[] bits : rows) {
+						System.arraycopy(bits, 1, bits, 0, bits.length - 1);
+						bits[bits.length - 1] = 0L;
+					}
+					base += 64;
+				}
+			}
+		}
+
+		// starts and ends the runs of each row that change at the given column, merging ends on consecutive rows
+		private void runs(int column, long bit) {
+			int groupTop = -1; // the first row of a group of runs that end at the column
+			int groupStart = 0; // the start of the runs of the group
+			for (int r = 0; r <= rows.length; r++) {
+				boolean ends = r < rows.length && (changes[r] & bit) != 0L && starts[r] != Integer.MIN_VALUE;
+				if (groupTop != -1 && (!ends || starts[r] != groupStart)) {
+					rect(groupStart, top + groupTop, column - groupStart, r - groupTop);
+					groupTop = -1;
+				}
+				if (r == rows.length || (changes[r] & bit) == 0L) continue;
+				if (ends) {
+					if (groupTop == -1) {
+						groupTop = r;
+						groupStart = starts[r];
+					}
+					starts[r] = Integer.MIN_VALUE;
+				} else {
+					starts[r] = column;
+				}
+			}
+		}
+
+		// the plotter interface does not admit exceptions, so the first is retained until the path is finished
+		private void rect(int left, int top, int width, int height) {
+			if (exception != null) return;
+			try {
+				path.rect(left, top, width, height);
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+
+	}
+
+	// writes rectangles using relative moves between them
+	private static final class Path {
+
+		private final Appendable out;
+		private int x; // the current point, once the first rectangle is written
+		private int y;
+		private boolean first = true;
+
+		Path(Appendable out) {
+			this.out = out;
+		}
+
+		void rect(int left, int top, int width, int height) throws IOException {
+			if (first) {
+				// the element is only written if it contains a rectangle
+				out.append("<path d=\"M").append(Integer.toString(left));
+				if (top >= 0) out.append(' ');
+				out.append(Integer.toString(top));
+				first = false;
+			} else {
+				// a closed subpath leaves the current point at its start
+				out.append('m').append(Integer.toString(left - x));
+				if (top - y >= 0) out.append(' ');
+				out.append(Integer.toString(top - y));
+			}
+			out.append('h').append(Integer.toString(width));
+			out.append('v').append(Integer.toString(height));
+			out.append("h-").append(Integer.toString(width));
+			out.append('z');
+			x = left;
+			y = top;
+		}
+
+		void finish() throws IOException {
+			if (!first) out.append("\"/>");
+		}
+
+	}
+
+}
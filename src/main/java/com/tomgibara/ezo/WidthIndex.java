@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * The baseline widths of the prefixes of a string, sampled at regular
+ * intervals, for measuring and seeking within very long strings. Instances of
+ * this class are obtained from the {@link Ezo#widthIndex(String, int)} method
+ * of {@link Ezo}.
+ *
+ * <p>
+ * The string is divided into blocks of characters, one for each sample
+ * interval, that are measured in parallel using the common fork/join pool.
+ * Since kerning depends only on adjacent pairs of characters, each block is
+ * kerned against the character that precedes it and the widths of the blocks
+ * are summed to obtain the samples. All measurements are identical to those
+ * computed sequentially by {@link Ezo#baselineWidthOfString(String)} and
+ * {@link Ezo#accommodatedCharCount(String, int, int)}.
+ *
+ * <p>
+ * This class can be used by multiple threads without external synchronization.
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public final class WidthIndex {
+
+	// statics
+
+	private static final int LEAF_SIZE = 1 << 15; // the number of characters below which blocks are measured sequentially
+
+	static WidthIndex build(Ezo ezo, String str, int interval) {
+		int blocks = str.length() / interval + (str.length() % interval == 0 ? 0 : 1);
+		int[] widths = new int[blocks + 1];
+		int[] counts = new int[blocks + 1];
+		int[] reaches = new int[blocks];
+		new Measure(ezo, str, interval, widths, counts, reaches, 0, blocks).invoke();
+		// convert the block measurements into prefix sums
+		int width = 0;
+		int count = 0;
+		for (int i = 0; i <= blocks; i++) {
+			int w = widths[i];
+			int c = counts[i];
+			widths[i] = width;
+			counts[i] = count;
+			width += w;
+			count += c;
+		}
+		return new WidthIndex(ezo, str, interval, widths, counts, reaches);
+	}
+
+	// fields
+
+	private final Ezo ezo;
+	private final String str;
+	private final int interval;
+	private final int[] widths;  // the width preceding each block, and the total width
+	private final int[] counts;  // the number of code points preceding each block, and the total count
+	private final int[] reaches; // the furthest rendering in each block, relative to the block's start
+
+	private WidthIndex(Ezo ezo, String str, int interval, int[] widths, int[] counts, int[] reaches) {
+		this.ezo = ezo;
+		this.str = str;
+		this.interval = interval;
+		this.widths = widths;
+		this.counts = counts;
+		this.reaches = reaches;
+	}
+
+	// accessors
+
+	/**
+	 * The Ezo font in which the string is measured.
+	 *
+	 * @return the ezo instance from which this index was created
+	 */
+
+	public Ezo ezo() {
+		return ezo;
+	}
+
+	/**
+	 * The string that has been indexed.
+	 *
+	 * @return the string
+	 */
+
+	public String string() {
+		return str;
+	}
+
+	/**
+	 * The number of characters between successive samples.
+	 *
+	 * @return the sample interval
+	 */
+
+	public int sampleInterval() {
+		return interval;
+	}
+
+	/**
+	 * The number of samples in the index. The first sample is always for the
+	 * empty prefix and the last sample is always for the whole string.
+	 *
+	 * @return the number of samples
+	 */
+
+	public int sampleCount() {
+		return widths.length;
+	}
+
+	/**
+	 * The baseline width of the whole string.
+	 *
+	 * @return the width of the string as rendered in this font
+	 * @see Ezo#baselineWidthOfString(String)
+	 */
+
+	public int baselineWidth() {
+		return widths[widths.length - 1];
+	}
+
+	// methods
+
+	/**
+	 * The baseline width of the prefix of the string that ends at a sample.
+	 * The prefix consists of the first <code>index * sampleInterval()</code>
+	 * characters, or the whole string for the last sample.
+	 *
+	 * @param index
+	 *            the index of the sample
+	 * @return the baseline width of the prefix
+	 */
+
+	public int sampleWidth(int index) {
+		if (index < 0 || index >= widths.length) throw new IllegalArgumentException("invalid index");
+		return widths[index];
+	}
+
+	/**
+	 * The baseline width of any prefix of the string. The width is computed
+	 * from the nearest preceding sample, so that no more than
+	 * {@link #sampleInterval()} characters are measured.
+	 *
+	 * @param length
+	 *            the number of characters in the prefix
+	 * @return the baseline width of the prefix, equal to that of
+	 *         <code>str.substring(0, length)</code>
+	 */
+
+	public int prefixWidth(int length) {
+		if (length < 0 || length > str.length()) throw new IllegalArgumentException("invalid length");
+		int block = length / interval;
+		int from = block * interval;
+		return from == length ? widths[block] : widths[block] + ezo.measure(str, from, length, null);
+	}
+
+	/**
+	 * Calculates the number of characters from the string that will fit into
+	 * a specified width. Only the block of characters containing the last
+	 * character that fits is measured.
+	 *
+	 * @param width
+	 *            the width of the gap into which the characters are to fit
+	 * @param ellipsisWidth
+	 *            the width of an ellipsis that will be displayed if the string
+	 *            is truncated, zero if no ellipsis is to be displayed
+	 * @return the number of characters in the string that fit ranging from zero
+	 *         to the length of the string inclusive
+	 * @see Ezo#accommodatedCharCount(String, int, int)
+	 */
+
+	public int accommodatedCharCount(int width, int ellipsisWidth) {
+		for (int block = 0; block < reaches.length; block++) {
+			if (reaches[block] == Integer.MIN_VALUE || widths[block] + reaches[block] <= width) continue;
+			if (ellipsisWidth == 0) return counts[block] + ezo.accommodated(str, block * interval, widths[block], width);
+			if (ellipsisWidth > width) return 0;
+			return accommodatedCharCount(width - ellipsisWidth, 0);
+		}
+		return counts[counts.length - 1];
+	}
+
+	// inner classes
+
+	// measures a range of blocks, splitting it between tasks if it is large
+	private static final class Measure extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Ezo ezo;
+		private final String str;
+		private final int interval;
+		private final int[] widths;
+		private final int[] counts;
+		private final int[] reaches;
+		private final int from; // the first block
+		private final int to; // the block after the last
+
+		Measure(Ezo ezo, String str, int interval, int[] widths, int[] counts, int[] reaches, int from, int to) {
+			this.ezo = ezo;
+			this.str = str;
+			this.interval = interval;
+			this.widths = widths;
+			this.counts = counts;
+			this.reaches = reaches;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1 && (long) (to - from) * interval > LEAF_SIZE) {
+				int mid = (from + to) >>> 1;
+				invokeAll(
+						new Measure(ezo, str, interval, widths, counts, reaches, from, mid),
+						new Measure(ezo, str, interval, widths, counts, reaches, mid, to)
+						);
+				return;
+			}
+			int[] stats = new int[2];
+			for (int block = from; block < to; block++) {
+				int start = block * interval;
+				widths[block] = ezo.measure(str, start, Math.min(start + interval, str.length()), stats);
+				counts[block] = stats[0];
+				reaches[block] = stats[1];
+			}
+		}
+
+	}
+}
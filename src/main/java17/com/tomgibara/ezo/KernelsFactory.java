@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+// chooses the kernels for the running JDK
+// vectorized kernels are only used if the incubating vector module has been added, and the platform supports
+// vectors of at least four ints; otherwise the scalar kernels are used
+final class KernelsFactory {
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	static Kernels create() {
+		if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) return new Kernels();
+		try {
+			if (VectorKernels.isSupported()) return new VectorKernels();
+		} catch (LinkageError e) {
+			/* fall through to scalar kernels */
+		}
+		return new Kernels();
+	}
+
+	private KernelsFactory() { }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// kernels that process as many elements at once as fit in the preferred vector of ints
+// each produces exactly the same result as its scalar counterpart, which completes any elements that do not fill a vector
+final class VectorKernels extends Kernels {
+
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+	// shorts with the same number of lanes as the ints, so that characters convert to ints without splitting
+	private static final VectorSpecies<Short> SHORTS = VectorSpecies.of(short.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+	private static final int LANES = INTS.length();
+	// the bit tested by each lane when expanding pixels, the left-most pixel in the first lane
+	private static final IntVector LANE_BITS = laneBits();
+
+	// the table indices of the pairs of characters in a vector, per thread since the kernels are shared
+	private final ThreadLocal<int[]> pairIndices = ThreadLocal.withInitial(() -> new int[LANES]);
+
+	static boolean isSupported() {
+		return LANES >= 4;
+	}
+
+	private static IntVector laneBits() {
+		int[] bits = new int[LANES];
+		for (int i = 0; i < LANES; i++) {
+			bits[i] = 1 << (LANES - 1 - i);
+		}
+		return IntVector.fromArray(INTS, bits, 0);
+	}
+
+	@Override
+	boolean below(char[] chars, int from, int to, int limit) {
+		int i = from;
+		for (int bound = to - LANES; i <= bound; i += LANES) {
+			ShortVector v = ShortVector.fromCharArray(SHORTS, chars, i);
+			if (v.compare(VectorOperators.UNSIGNED_GE, (short) limit).anyTrue()) return false;
+		}
+		return super.below(chars, i, to, limit);
+	}
+
+	@Override
+	int sumPairs(int[] pairs, char[] chars, int from, int to) {
+		IntVector sums = IntVector.zero(INTS);
+		int[] indices = pairIndices.get();
+		int i = from;
+		for (int bound = to - LANES; i <= bound; i += LANES) {
+			// sign extension is safe since every character is less than 128
+			IntVector prev = (IntVector) ShortVector.fromCharArray(SHORTS, chars, i - 1).convertShape(VectorOperators.S2I, INTS, 0);
+			IntVector next = (IntVector) ShortVector.fromCharArray(SHORTS, chars, i).convertShape(VectorOperators.S2I, INTS, 0);
+			prev.lanewise(VectorOperators.LSHL, 7).or(next).intoArray(indices, 0);
+			sums = sums.add(IntVector.fromArray(INTS, pairs, 0, indices, 0));
+		}
+		return sums.reduceLanes(VectorOperators.ADD) + super.sumPairs(pairs, chars, i, to);
+	}
+
+	@Override
+	void expand(long[] words, int index, int bit, int count, int ink, int paper, int[] pixels, int offset) {
+		IntVector papers = IntVector.broadcast(INTS, paper);
+		int i = 0;
+		for (int bound = count - LANES; i <= bound; i += LANES) {
+			int b = bit + i;
+			int w = index + (b >> 6);
+			int s = b & 63;
+			// the next bits, left-aligned, possibly spanning two words
+			long word = words[w] << s;
+			if (s + LANES > 64) word |= words[w + 1] >>> (64 - s);
+			int bits = (int) (word >>> (64 - LANES));
+			VectorMask<Integer> set = LANE_BITS.and(bits).compare(VectorOperators.NE, 0);
+			papers.blend(ink, set).intoArray(pixels, offset + i);
+		}
+		super.expand(words, index, bit + i, count - i, ink, paper, pixels, offset + i);
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.tomgibara.ezo.Ezo.Plotter;
+
+// confirms that numbers are rendered and measured exactly as the strings produced by String.format
+public class EzoNumberChecker {
+
+	private static final int TRIALS = 20000;
+
+	private static final char[] GROUPINGS = { ',', ' ', '\'', '_' };
+
+	private static final char[] POINTS = { '.', ',' };
+
+	private static final double[] SPECIALS = {
+			0.0, -0.0, 0.5, -0.5, 0.49999999999999994, -0.49999999999999994, 2.675, 1.005, 0.15,
+			Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+			Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+	};
+
+	public static void main(String... args) {
+		Ezo[] bases = { Ezo.regular(), Ezo.bold(), Ezo.italic(), Ezo.boldItalic() };
+		Random r = new Random(0L);
+		int failures = 0;
+
+		for (int t = 0; t < TRIALS; t++) {
+			Ezo ezo = bases[r.nextInt(bases.length)].withUnderline(r.nextInt(4) == 0).withScale(1 + r.nextInt(3));
+			NumberStyle style = style(r);
+			int decimals = style.decimals();
+
+			// integers, counted in units of the last decimal place
+			long units = t % 50 == 0 ? (r.nextBoolean() ? Long.MIN_VALUE : Long.MAX_VALUE) : r.nextLong() >> r.nextInt(64);
+			String str = expected(String.format(Locale.ROOT, pattern(style), BigDecimal.valueOf(units).abs().movePointLeft(decimals)), units < 0L, style);
+			Spans actual = new Spans();
+			int advance = ezo.renderer(actual).renderLong(units, style);
+			if (!matches(ezo, str, actual, advance) || ezo.baselineWidthOfLong(units, style) != ezo.baselineWidthOfString(str) || ezo.renderedWidthOfLong(units, style) != ezo.renderedWidthOfString(str)) {
+				failures++;
+				System.out.println("Long " + units + " does not render as \"" + str + "\" in style " + style);
+			}
+
+			// numbers, which are rounded
+			double value = value(r, decimals);
+			if (Double.isNaN(value)) {
+				str = "NaN";
+			} else if (Double.isInfinite(value)) {
+				str = (value < 0.0 ? "-" : style.isPlusSigned() ? "+" : "") + "Infinity";
+			} else {
+				str = expected(String.format(Locale.ROOT, pattern(style), Math.abs(value)), value < 0.0, style);
+			}
+			actual = new Spans();
+			advance = ezo.renderer(actual).renderDouble(value, style);
+			if (!matches(ezo, str, actual, advance) || ezo.baselineWidthOfDouble(value, style) != ezo.baselineWidthOfString(str) || ezo.renderedWidthOfDouble(value, style) != ezo.renderedWidthOfString(str)) {
+				failures++;
+				System.out.println("Double " + value + " does not render as \"" + str + "\" in style " + style);
+			}
+		}
+
+		System.out.println(failures == 0 ? "Numbers render as formatted strings" : failures + " mismatches");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	private static NumberStyle style(Random r) {
+		// few decimal places are most common
+		NumberStyle style = NumberStyle.plain().withDecimals(r.nextBoolean() ? r.nextInt(4) : r.nextInt(NumberStyle.MAX_DECIMALS + 1));
+		if (r.nextBoolean()) style = style.withGrouping(GROUPINGS[r.nextInt(GROUPINGS.length)]);
+		style = style.withDecimalPoint(POINTS[r.nextInt(POINTS.length)]);
+		return style.withPlusSign(r.nextInt(4) == 0);
+	}
+
+	// values from every path: halves, those near the limit of exact rounding, those too large for a long, and specials
+	private static double value(Random r, int decimals) {
+		double value;
+		switch (r.nextInt(6)) {
+		case 0:
+			// a half of the last decimal place, in decimal
+			value = Double.parseDouble(r.nextInt(100000) + "." + digits(r, decimals) + "5");
+			break;
+		case 1:
+			value = r.nextDouble() * Math.pow(10.0, r.nextInt(12) - 4);
+			break;
+		case 2:
+			// near the greatest number of units that are rounded without allocation
+			value = (0x1p46 + r.nextInt(2000) - 1000 + r.nextDouble()) / Math.pow(10.0, decimals);
+			break;
+		case 3:
+			// more units than are rounded without allocation, but possibly few enough to count in a long
+			value = Math.scalb(1.0 + r.nextDouble(), 46 + r.nextInt(20)) / Math.pow(10.0, decimals);
+			break;
+		case 4:
+			// too large to be counted in a long
+			value = Math.pow(10.0, 19 + r.nextInt(290)) * (1.0 + r.nextDouble());
+			break;
+		default:
+			value = SPECIALS[r.nextInt(SPECIALS.length)];
+		}
+		return r.nextBoolean() ? -value : value;
+	}
+
+	private static String digits(Random r, int count) {
+		char[] chars = new char[count];
+		for (int i = 0; i < count; i++) {
+			chars[i] = (char) ('0' + r.nextInt(10));
+		}
+		return new String(chars);
+	}
+
+	// the String.format pattern for the magnitude of a number in the style, with separators to be replaced
+	private static String pattern(NumberStyle style) {
+		return "%" + (style.isGrouped() ? "," : "") + "." + style.decimals() + "f";
+	}
+
+	// the formatted magnitude with the separators and sign of the style, and no minus sign for zero
+	private static String expected(String formatted, boolean negative, NumberStyle style) {
+		StringBuilder sb = new StringBuilder();
+		boolean zero = true;
+		for (int i = 0; i < formatted.length(); i++) {
+			char c = formatted.charAt(i);
+			if (c == ',') {
+				sb.append(style.grouping());
+			} else if (c == '.') {
+				sb.append(style.decimalPoint());
+			} else {
+				if (c != '0') zero = false;
+				sb.append(c);
+			}
+		}
+		if (negative && !zero) return "-" + sb;
+		return style.isPlusSigned() ? "+" + sb : sb.toString();
+	}
+
+	// whether the spans plotted and the advance match those of rendering the string
+	private static boolean matches(Ezo ezo, String str, Spans actual, int advance) {
+		Spans expected = new Spans();
+		return ezo.renderer(expected).renderString(str) == advance && expected.equals(actual);
+	}
+
+	// records every span in the order it is plotted
+	private static final class Spans implements Plotter {
+
+		private final List<String> spans = new ArrayList<>();
+
+		@Override
+		public void plot(int x, int y) {
+			spans.add("plot " + x + "," + y);
+		}
+
+		@Override
+		public void plotSpan(int x, int y, int length) {
+			spans.add("span " + x + "," + y + "+" + length);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Spans && ((Spans) obj).spans.equals(spans);
+		}
+
+		@Override
+		public int hashCode() {
+			return spans.hashCode();
+		}
+
+	}
+
+}
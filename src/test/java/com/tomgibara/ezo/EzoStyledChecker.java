@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.util.Random;
+
+// confirms that styled text is only underlined beneath its underlined segments, however wide the segments between them
+public class EzoStyledChecker {
+
+	private static final int TRIALS = 2000;
+
+	private static final String CHARS = "abcdefgjpqy ABC,.!";
+
+	public static void main(String... args) {
+		Ezo[] bases = { Ezo.regular(), Ezo.bold(), Ezo.italic(), Ezo.boldItalic() };
+		Random r = new Random(0L);
+		int failures = 0;
+		int lined = 0; // the number of underline pixels found, so that the check cannot pass vacuously
+
+		for (int t = 0; t < TRIALS; t++) {
+			int scale = 1 + r.nextInt(3);
+			StyledText text = StyledText.empty();
+			StyledText plain = StyledText.empty();
+			int count = 1 + r.nextInt(6);
+			int[] ranges = new int[count * 2]; // the extent along the baseline of each underlined segment
+			for (int i = 0; i < count; i++) {
+				// some spaces are far wider than the window in which the underline is recorded
+				Ezo style = bases[r.nextInt(bases.length)].withScale(scale).withWidthOfSpace(r.nextInt(4) == 0 ? (40 + r.nextInt(100)) / scale * scale : 2 * scale);
+				String str = string(r, 1 + r.nextInt(10));
+				boolean underlined = r.nextBoolean();
+				ranges[2 * i] = underlined ? text.baselineWidth() : Integer.MAX_VALUE;
+				text = text.append(style.withUnderline(underlined), str);
+				plain = plain.append(style, str);
+				ranges[2 * i + 1] = underlined ? text.baselineWidth() : Integer.MIN_VALUE;
+			}
+			int x = 8 * scale;
+			int y = 6 * scale;
+			Raster expected = new Raster(plain.renderedWidth() + 16 * scale, 8 * scale);
+			Raster actual = new Raster(expected.width(), expected.height());
+			Ezo.regular().renderer(expected).locate(x, y).renderStyled(plain);
+			Ezo.regular().renderer(actual).locate(x, y).renderStyled(text);
+			for (int py = 0; py < actual.height(); py++) {
+				for (int px = 0; px < actual.width(); px++) {
+					if (actual.isSet(px, py) == expected.isSet(px, py)) continue;
+					// pixels that differ must be underline, on its rows and within an underlined segment
+					boolean valid = !expected.isSet(px, py) && py >= y + scale && py < y + 2 * scale && within(ranges, px - x, scale);
+					if (valid) {
+						lined++;
+					} else {
+						failures++;
+						System.out.println("Unexpected pixel at (" + px + "," + py + ") rendering " + text);
+					}
+				}
+			}
+		}
+		if (lined == 0) {
+			failures++;
+			System.out.println("No underline was rendered");
+		}
+
+		System.out.println(failures == 0 ? "Styled text is underlined only beneath underlined segments" : failures + " unexpected pixels");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	private static String string(Random r, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = CHARS.charAt(r.nextInt(CHARS.length()));
+		}
+		return new String(chars);
+	}
+
+	// whether a position lies beneath an underlined segment, allowing for kerning and the overhang of its last glyph
+	private static boolean within(int[] ranges, int position, int scale) {
+		for (int i = 0; i < ranges.length; i += 2) {
+			if (position >= ranges[i] - 2 * scale && position < ranges[i + 1] + 8 * scale) return true;
+		}
+		return false;
+	}
+
+}
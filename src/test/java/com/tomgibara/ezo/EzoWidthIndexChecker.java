@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.util.Random;
+
+// confirms that width indices measure exactly as the sequential width methods do
+public class EzoWidthIndexChecker {
+
+	private static final int TRIALS = 2000;
+
+	private static final int CHECKS = 40; // the number of prefixes and widths checked in each trial
+
+	private static final String CHARS = "abcdefgjpqy ABCXYZ019,.;!?'\"-_/|()[]{}@#%&*";
+
+	private static final String CONTROL_CHARS = "\u0000\u0001\t\n\u001f";
+
+	public static void main(String... args) {
+		Ezo[] ezos = {
+				Ezo.regular(), Ezo.bold(), Ezo.italic(), Ezo.boldItalic().withWidthOfSpace(9),
+				Ezo.regular().withScale(2), Ezo.boldItalic().withScale(3),
+		};
+		Random r = new Random(0L);
+		int failures = 0;
+
+		for (int t = 0; t < TRIALS; t++) {
+			Ezo ezo = ezos[r.nextInt(ezos.length)];
+			// long strings of printable ASCII are summed from the table of character pairs
+			String str = string(r, t % 4 == 0 ? 256 + r.nextInt(3000) : r.nextInt(300), r.nextInt(3) != 0);
+			int interval = 1 + r.nextInt(r.nextBoolean() ? 16 : 600);
+			WidthIndex index = ezo.widthIndex(str, interval);
+			int total = sequentialWidth(ezo, str);
+			if (index.baselineWidth() != total) {
+				failures++;
+				System.out.println("Width " + index.baselineWidth() + " expected " + total + " for " + describe(ezo, str, interval));
+			}
+
+			for (int i = 0; i < CHECKS; i++) {
+				// the ends of blocks are included, where the widths of blocks are joined
+				int length = i == 0 ? str.length() : r.nextBoolean() ? Math.min(str.length(), interval * r.nextInt(str.length() / interval + 1)) : r.nextInt(str.length() + 1);
+				int expected = sequentialWidth(ezo, str.substring(0, length));
+				int actual = index.prefixWidth(length);
+				if (actual != expected) {
+					failures++;
+					System.out.println("Prefix width " + actual + " expected " + expected + " for length " + length + " of " + describe(ezo, str, interval));
+				}
+			}
+
+			for (int i = 0; i < CHECKS; i++) {
+				int width = r.nextInt(total + 20) - 5;
+				int ellipsisWidth = r.nextBoolean() ? 0 : r.nextInt(20);
+				int expected = ezo.accommodatedCharCount(str, width, ellipsisWidth);
+				int actual = index.accommodatedCharCount(width, ellipsisWidth);
+				if (actual != expected) {
+					failures++;
+					System.out.println("Count " + actual + " expected " + expected + " for width " + width + " with ellipsis " + ellipsisWidth + " of " + describe(ezo, str, interval));
+				}
+			}
+		}
+
+		System.out.println(failures == 0 ? "Width indices match sequential measurement" : failures + " mismatches");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	// strings that are not printable ASCII contain control characters, which have no width
+	private static String string(Random r, int length, boolean printable) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			String from = printable || r.nextInt(16) != 0 ? CHARS : CONTROL_CHARS;
+			chars[i] = from.charAt(r.nextInt(from.length()));
+		}
+		return new String(chars);
+	}
+
+	// strings as long as the pair table's threshold are measured from it, so long strings are measured a pair at a time
+	private static int sequentialWidth(Ezo ezo, String str) {
+		if (str.isEmpty()) return 0;
+		int width = ezo.baselineWidthOfChar(str.charAt(0));
+		for (int i = 1; i < str.length(); i++) {
+			// the kerned advance of each character is the width of the pair less that of its predecessor
+			width += ezo.baselineWidthOfString(str.substring(i - 1, i + 1)) - ezo.baselineWidthOfChar(str.charAt(i - 1));
+		}
+		return width;
+	}
+
+	private static String describe(Ezo ezo, String str, int interval) {
+		return ezo + " at interval " + interval + ": \"" + str + "\"";
+	}
+
+}
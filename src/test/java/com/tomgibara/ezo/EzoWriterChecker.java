@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.tomgibara.ezo.Ezo.Fill;
+import com.tomgibara.ezo.Ezo.Plotter;
+import com.tomgibara.ezo.Ezo.Renderer;
+
+// confirms that writers plot exactly what renderString plots, however the text is divided into writes
+public class EzoWriterChecker {
+
+	private static final int TRIALS = 5000;
+
+	private static final String CHARS = "abcdefgjpqy ABCXYZ019,.;!?'\"-_/|()[]{}@#%&*\u00e9\u0001";
+
+	public static void main(String... args) throws IOException {
+		Ezo[] bases = { Ezo.regular(), Ezo.bold(), Ezo.italic(), Ezo.boldItalic().withWidthOfSpace(9) };
+		Random r = new Random(0L);
+		int failures = 0;
+
+		for (int t = 0; t < TRIALS; t++) {
+			Ezo ezo = bases[r.nextInt(bases.length)].withUnderline(r.nextBoolean()).withScale(1 + r.nextInt(3));
+			int degrees = 90 * r.nextInt(4);
+			Fill fill = Fill.values()[r.nextInt(Fill.values().length)];
+			String str = string(r, r.nextInt(t % 10 == 0 ? 500 : 40));
+
+			Spans expected = new Spans();
+			Renderer renderer = ezo.renderer(expected).locate(100, 100).rotate(degrees).fill(fill);
+			int advance = renderer.renderString(str);
+			String state = state(renderer, advance);
+
+			// one character per write
+			Spans single = new Spans();
+			renderer = ezo.renderer(single).locate(100, 100).rotate(degrees).fill(fill);
+			RenderWriter writer = renderer.writer();
+			for (int i = 0; i < str.length(); i++) {
+				writer.write(str.charAt(i));
+			}
+			writer.close();
+			if (!expected.equals(single) || !state.equals(state(renderer, writer.advance()))) {
+				failures++;
+				System.out.println("Single character writes differ rendering " + ezo + " \"" + str + "\"");
+			}
+
+			// chunks of random length, written by each method
+			Spans chunked = new Spans();
+			renderer = ezo.renderer(chunked).locate(100, 100).rotate(degrees).fill(fill);
+			writer = renderer.writer();
+			for (int i = 0; i < str.length(); ) {
+				int j = Math.min(str.length(), i + r.nextInt(12));
+				switch (r.nextInt(5)) {
+				case 0: writer.write(str.toCharArray(), i, j - i); break;
+				case 1: writer.write(str, i, j - i); break;
+				case 2: writer.append(str, i, j); break;
+				case 3: writer.write(CharBuffer.wrap(str, i, j)); break;
+				default: writer.write(CharBuffer.wrap(str.toCharArray(), i, j - i)); break;
+				}
+				i = j;
+			}
+			writer.close();
+			if (!expected.equals(chunked) || !state.equals(state(renderer, writer.advance()))) {
+				failures++;
+				System.out.println("Chunked writes differ rendering " + ezo + " \"" + str + "\"");
+			}
+		}
+
+		System.out.println(failures == 0 ? "Writers plot the same pixels as renderString" : failures + " mismatches");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	private static String string(Random r, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = CHARS.charAt(r.nextInt(CHARS.length()));
+		}
+		return new String(chars);
+	}
+
+	// the advance, the location and the dirty bounds of a renderer
+	private static String state(Renderer renderer, int advance) {
+		return advance + " (" + renderer.x() + "," + renderer.y() + ") " + renderer.dirtyBounds();
+	}
+
+	// records every span in the order it is plotted
+	private static final class Spans implements Plotter {
+
+		private final List<String> spans = new ArrayList<>();
+
+		@Override
+		public void plot(int x, int y) {
+			spans.add("plot " + x + "," + y);
+		}
+
+		@Override
+		public void plotSpan(int x, int y, int length) {
+			spans.add("span " + x + "," + y + "+" + length);
+		}
+
+		@Override
+		public void plotBackgroundSpan(int x, int y, int length) {
+			spans.add("background " + x + "," + y + "+" + length);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Spans && ((Spans) obj).spans.equals(spans);
+		}
+
+		@Override
+		public int hashCode() {
+			return spans.hashCode();
+		}
+
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.ezo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// confirms that the vectorized kernels produce exactly the same output as the scalar kernels
+// run with: java --add-modules jdk.incubator.vector com.tomgibara.ezo.EzoKernelChecker
+public class EzoKernelChecker {
+
+	private static final int TRIALS = 10000;
+
+	public static void main(String... args) {
+		if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() || !VectorKernels.isSupported()) {
+			System.out.println("Vector kernels unavailable; run with --add-modules jdk.incubator.vector");
+			System.exit(1);
+		}
+		Kernels scalar = new Kernels();
+		Kernels vector = new VectorKernels();
+		Random r = new Random(0L);
+		int failures = 0;
+
+		// pixel expansion
+		long[] words = new long[8];
+		for (int t = 0; t < TRIALS; t++) {
+			for (int i = 0; i < words.length; i++) {
+				words[i] = r.nextLong();
+			}
+			int bit = r.nextInt(128);
+			int count = r.nextInt(words.length * 64 - bit + 1);
+			int offset = r.nextInt(4);
+			int[] expected = new int[offset + count];
+			int[] actual = new int[offset + count];
+			scalar.expand(words, 0, bit, count, 0xff000000, 0xffffffff, expected, offset);
+			vector.expand(words, 0, bit, count, 0xff000000, 0xffffffff, actual, offset);
+			if (!Arrays.equals(expected, actual)) failures++;
+		}
+
+		// character range tests and pair sums, over each style and scale
+		Ezo[] ezos = {
+				Ezo.regular(), Ezo.bold(), Ezo.italic(), Ezo.boldItalic().withWidthOfSpace(7),
+				Ezo.regular().withScale(2), Ezo.boldItalic().withScale(3),
+		};
+		for (int t = 0; t < TRIALS; t++) {
+			char[] chars = new char[1 + r.nextInt(300)];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char) r.nextInt(127);
+			}
+			if (r.nextInt(4) == 0) chars[r.nextInt(chars.length)] = (char) (127 + r.nextInt(0xff80));
+			int from = r.nextInt(chars.length);
+			if (scalar.below(chars, from, chars.length, 127) != vector.below(chars, from, chars.length, 127)) failures++;
+			if (!scalar.below(chars, 0, chars.length, 127)) continue;
+			int[] pairs = ezos[t % ezos.length].pairs();
+			int start = Math.max(from, 1);
+			if (scalar.sumPairs(pairs, chars, start, chars.length) != vector.sumPairs(pairs, chars, start, chars.length)) failures++;
+		}
+
+		System.out.println(failures == 0 ? "Vector kernels match scalar kernels" : failures + " mismatches");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+}